@@ -0,0 +1,99 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package GraphDrawer;
+
+/**
+ * the settings of the graph drawings: the SpringMass weight heuristics, the stress cutoffs and which kernels to run.
+ * Immutable, so drawings with different settings can run side by side; the with methods return a changed copy.
+ */
+public final class DrawingParams {
+	//what the drawings use when they aren't given any
+	public static final DrawingParams DEFAULTS = new DrawingParams(1, 0, 3, 1, true, false, -1, -1,
+			true, false, 0.75, 0, 100);
+
+	public final double alpha;
+	public final double wDistance;
+	public final double wDisagreement;
+	public final double wBaseline;
+	public final boolean relativeDisagreement;
+	public final boolean fractionInsteadOfExponent;
+	public final double thresholdStressToCutoffMin;
+	public final double thresholdStressToCutoffMax;
+	//weighted majorization runs on flat double[] arrays instead of commons-math matrices, see weightedStressMajorizationPrimitive
+	public final boolean primitiveKernel;
+	//MDS extracts only the top two eigenpairs with LanczosEigenSolver instead of a full EigenDecomposition
+	public final boolean topTwoEigenSolver;
+	//fraction of a neighborhood that has to be in last round's layout for the drawing to start from it instead of MDS
+	public final double warmStartOverlap;
+	//the unweighted majorization stops when the relative change in stress between sweeps drops below stressTolerance,
+	//or after stressMaxIterations sweeps. A tolerance of 0 always runs every sweep
+	public final double stressTolerance;
+	public final int stressMaxIterations;
+
+	private DrawingParams(double alpha, double wDistance, double wDisagreement, double wBaseline,
+						  boolean relativeDisagreement, boolean fractionInsteadOfExponent,
+						  double thresholdStressToCutoffMin, double thresholdStressToCutoffMax,
+						  boolean primitiveKernel, boolean topTwoEigenSolver, double warmStartOverlap,
+						  double stressTolerance, int stressMaxIterations){
+		this.alpha = alpha;
+		this.wDistance = wDistance;
+		this.wDisagreement = wDisagreement;
+		this.wBaseline = wBaseline;
+		this.relativeDisagreement = relativeDisagreement;
+		this.fractionInsteadOfExponent = fractionInsteadOfExponent;
+		this.thresholdStressToCutoffMin = thresholdStressToCutoffMin;
+		this.thresholdStressToCutoffMax = thresholdStressToCutoffMax;
+		this.primitiveKernel = primitiveKernel;
+		this.topTwoEigenSolver = topTwoEigenSolver;
+		this.warmStartOverlap = warmStartOverlap;
+		this.stressTolerance = stressTolerance;
+		this.stressMaxIterations = stressMaxIterations;
+	}
+
+	//the SpringMass weight heuristics and stress cutoffs, see getWeightMatrix
+	public DrawingParams withWeights(double alpha, double wDistance, double wDisagreement,
+									 double wBaseline, boolean relativeDelta,
+									 boolean fractionInsteadOfExponent,
+									 double thresholdStressMin, double thresholdStressMax){
+		return new DrawingParams(alpha, wDistance, wDisagreement, wBaseline, relativeDelta, fractionInsteadOfExponent,
+				thresholdStressMin, thresholdStressMax, primitiveKernel, topTwoEigenSolver, warmStartOverlap,
+				stressTolerance, stressMaxIterations);
+	}
+
+	public DrawingParams withPrimitiveKernel(boolean primitiveKernel){
+		return new DrawingParams(alpha, wDistance, wDisagreement, wBaseline, relativeDisagreement, fractionInsteadOfExponent,
+				thresholdStressToCutoffMin, thresholdStressToCutoffMax, primitiveKernel, topTwoEigenSolver, warmStartOverlap,
+				stressTolerance, stressMaxIterations);
+	}
+
+	public DrawingParams withTopTwoEigenSolver(boolean topTwoEigenSolver){
+		return new DrawingParams(alpha, wDistance, wDisagreement, wBaseline, relativeDisagreement, fractionInsteadOfExponent,
+				thresholdStressToCutoffMin, thresholdStressToCutoffMax, primitiveKernel, topTwoEigenSolver, warmStartOverlap,
+				stressTolerance, stressMaxIterations);
+	}
+
+	public DrawingParams withWarmStartOverlap(double warmStartOverlap){
+		return new DrawingParams(alpha, wDistance, wDisagreement, wBaseline, relativeDisagreement, fractionInsteadOfExponent,
+				thresholdStressToCutoffMin, thresholdStressToCutoffMax, primitiveKernel, topTwoEigenSolver, warmStartOverlap,
+				stressTolerance, stressMaxIterations);
+	}
+
+	public DrawingParams withStressConvergence(double stressTolerance, int stressMaxIterations){
+		return new DrawingParams(alpha, wDistance, wDisagreement, wBaseline, relativeDisagreement, fractionInsteadOfExponent,
+				thresholdStressToCutoffMin, thresholdStressToCutoffMax, primitiveKernel, topTwoEigenSolver, warmStartOverlap,
+				stressTolerance, stressMaxIterations);
+	}
+}
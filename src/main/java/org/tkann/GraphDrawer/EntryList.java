@@ -0,0 +1,140 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package GraphDrawer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * the distance guesses a graph drawing is built from: for every agent in the neighborhood (the caller included),
+ * that agent's guesses to the agents it can see. The unboxed counterpart of the
+ * HashMap&lt;Integer, HashMap&lt;Integer, Double&gt;&gt; entry lists, in the order the agents were put in.
+ *
+ * the guess maps aren't copied, the drawings only read them.
+ */
+public class EntryList {
+
+    private int[] UIDs;
+    private IntDoubleMap[] guesses;
+    private int size;
+
+    public EntryList() {
+        this(8);
+    }
+
+    public EntryList(int expectedSize) {
+        UIDs = new int[Math.max(1, expectedSize)];
+        guesses = new IntDoubleMap[Math.max(1, expectedSize)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int UIDAt(int index) {
+        return UIDs[index];
+    }
+
+    public IntDoubleMap guessesAt(int index) {
+        return guesses[index];
+    }
+
+    /**
+     * @return the guesses of agent UID, or null if it isn't in the list
+     */
+    public IntDoubleMap get(int UID) {
+        int index = indexOf(UID);
+        return index < 0 ? null : guesses[index];
+    }
+
+    public boolean contains(int UID) {
+        return indexOf(UID) >= 0;
+    }
+
+    public void put(int UID, IntDoubleMap agentsGuesses) {
+        int index = indexOf(UID);
+        if (index >= 0) {
+            guesses[index] = agentsGuesses;
+            return;
+        }
+        if (size == UIDs.length) {
+            UIDs = Arrays.copyOf(UIDs, size * 2);
+            guesses = Arrays.copyOf(guesses, size * 2);
+        }
+        UIDs[size] = UID;
+        guesses[size] = agentsGuesses;
+        size++;
+    }
+
+    public void remove(int UID) {
+        int index = indexOf(UID);
+        if (index < 0) {
+            return;
+        }
+        System.arraycopy(UIDs, index + 1, UIDs, index, size - index - 1);
+        System.arraycopy(guesses, index + 1, guesses, index, size - index - 1);
+        size--;
+        guesses[size] = null;
+    }
+
+    /**
+     * a copy of the list that shares the guess maps. Copy a map before changing it
+     */
+    public EntryList copy() {
+        EntryList copy = new EntryList(size);
+        System.arraycopy(UIDs, 0, copy.UIDs, 0, size);
+        System.arraycopy(guesses, 0, copy.guesses, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * the UIDs in the list in ascending order; the row of each agent in the drawing's matrices
+     */
+    public int[] sortedUIDs() {
+        int[] sorted = Arrays.copyOf(UIDs, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    public HashMap<Integer, HashMap<Integer, Double>> toHashMap() {
+        HashMap<Integer, HashMap<Integer, Double>> map = new HashMap<>();
+        for (int index = 0; index < size; index++) {
+            map.put(UIDs[index], guesses[index].toHashMap());
+        }
+        return map;
+    }
+
+    /**
+     * copies a boxed entry list, keeping the order it iterates in
+     */
+    public static EntryList fromHashMap(HashMap<Integer, HashMap<Integer, Double>> entryList) {
+        EntryList converted = new EntryList(entryList.size());
+        for (Integer UID : entryList.keySet()) {
+            converted.put(UID, IntDoubleMap.fromHashMap(entryList.get(UID)));
+        }
+        return converted;
+    }
+
+    private int indexOf(int UID) {
+        for (int index = 0; index < size; index++) {
+            if (UIDs[index] == UID) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package GraphDrawer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * a map from int keys to double values that doesn't box anything. It's meant for the per neighbor distance guesses,
+ * which get cleared and refilled every round, so clear() keeps the arrays around for the next round.
+ *
+ * entries are kept in the order they were first put in and can be walked with keyAt()/valueAt(), the open
+ * addressing table on top only finds the slot of a key.
+ */
+public class IntDoubleMap {
+
+    private int[] keys;
+    private double[] values;
+    private int size;
+
+    //slot of each key plus one, 0 for an empty bucket. Always a power of two and at most half full
+    private int[] table;
+
+    public IntDoubleMap() {
+        this(8);
+    }
+
+    public IntDoubleMap(int expectedSize) {
+        int capacity = Math.max(4, expectedSize);
+        keys = new int[capacity];
+        values = new double[capacity];
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public double valueAt(int slot) {
+        return values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * @return the value for key, or NaN if there isn't one
+     */
+    public double get(int key) {
+        return getOrDefault(key, Double.NaN);
+    }
+
+    public double getOrDefault(int key, double defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public void put(int key, double value) {
+        int bucket = bucketOf(key);
+        while (table[bucket] != 0) {
+            int slot = table[bucket] - 1;
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            bucket = (bucket + 1) & (table.length - 1);
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        if (size * 2 > table.length) {
+            rebuildTable(table.length * 2);
+        } else {
+            table[bucket] = size;
+        }
+    }
+
+    public void putAll(IntDoubleMap other) {
+        for (int slot = 0; slot < other.size; slot++) {
+            put(other.keys[slot], other.values[slot]);
+        }
+    }
+
+    /**
+     * removes key if it's there. The entries after it move up a slot so the order is kept
+     */
+    public void remove(int key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return;
+        }
+        System.arraycopy(keys, slot + 1, keys, slot, size - slot - 1);
+        System.arraycopy(values, slot + 1, values, slot, size - slot - 1);
+        size--;
+        rebuildTable(table.length);
+    }
+
+    /**
+     * empties the map but keeps its storage
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, 0);
+            size = 0;
+        }
+    }
+
+    /**
+     * makes this map an exact copy of other, reusing this map's storage where it's big enough
+     */
+    public void copyFrom(IntDoubleMap other) {
+        if (keys.length < other.size) {
+            keys = new int[other.keys.length];
+            values = new double[other.keys.length];
+        }
+        System.arraycopy(other.keys, 0, keys, 0, other.size);
+        System.arraycopy(other.values, 0, values, 0, other.size);
+        size = other.size;
+        rebuildTable(Math.max(table.length, other.table.length));
+    }
+
+    public IntDoubleMap copy() {
+        IntDoubleMap copy = new IntDoubleMap(Math.max(size, 4));
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public boolean containsNaN() {
+        for (int slot = 0; slot < size; slot++) {
+            if (Double.isNaN(values[slot])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public HashMap<Integer, Double> toHashMap() {
+        HashMap<Integer, Double> map = new HashMap<>();
+        for (int slot = 0; slot < size; slot++) {
+            map.put(keys[slot], values[slot]);
+        }
+        return map;
+    }
+
+    /**
+     * copies a boxed map, keeping the order it iterates in
+     */
+    public static IntDoubleMap fromHashMap(HashMap<Integer, Double> map) {
+        IntDoubleMap converted = new IntDoubleMap(map.size());
+        for (Integer key : map.keySet()) {
+            converted.put(key, map.get(key));
+        }
+        return converted;
+    }
+
+    private int slotOf(int key) {
+        int bucket = bucketOf(key);
+        while (table[bucket] != 0) {
+            int slot = table[bucket] - 1;
+            if (keys[slot] == key) {
+                return slot;
+            }
+            bucket = (bucket + 1) & (table.length - 1);
+        }
+        return -1;
+    }
+
+    private int bucketOf(int key) {
+        int mixed = key * 0x9E3779B9;
+        return (mixed ^ (mixed >>> 16)) & (table.length - 1);
+    }
+
+    private void rebuildTable(int capacity) {
+        if (table.length != capacity) {
+            table = new int[capacity];
+        } else {
+            Arrays.fill(table, 0);
+        }
+        for (int slot = 0; slot < size; slot++) {
+            int bucket = bucketOf(keys[slot]);
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & (table.length - 1);
+            }
+            table[bucket] = slot + 1;
+        }
+    }
+}
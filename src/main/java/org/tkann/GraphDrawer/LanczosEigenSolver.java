@@ -0,0 +1,290 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package GraphDrawer;
+
+/**
+ * finds the few algebraically largest eigenpairs of a small dense symmetric matrix with Lanczos iteration.
+ * <p>
+ * MDS only ever needs the top two eigenpairs of the double centered matrix, so instead of a full
+ * EigenDecomposition we build a Krylov basis (with full reorthogonalization, the matrices are small) and
+ * solve the much smaller tridiagonal problem. The basis grows until the wanted Ritz pairs have converged,
+ * at worst to n vectors, where the answer is exact up to round off.
+ */
+public class LanczosEigenSolver {
+
+    static final double TOLERANCE = 1e-10;
+    static final int INITIAL_BASIS = 12;
+
+    /**
+     * @param A       n*n symmetric matrix, row-major
+     * @param n       dimension of A
+     * @param k       number of eigenpairs wanted, at most n
+     * @param values  filled with the k largest eigenvalues, largest first
+     * @param vectors filled with the matching unit eigenvectors, vectors[i] has length n
+     */
+    public static void topEigenpairs(double[] A, int n, int k, double[] values, double[][] vectors) {
+        int basisSize = Math.min(n, Math.max(k, INITIAL_BASIS));
+        while (true) {
+            boolean converged = lanczos(A, n, k, basisSize, values, vectors);
+            if (converged || basisSize == n) {
+                return;
+            }
+            basisSize = Math.min(n, basisSize * 2);
+        }
+    }
+
+    //runs m Lanczos steps and extracts the top k Ritz pairs, returns true if their residuals are small enough
+    private static boolean lanczos(double[] A, int n, int k, int m, double[] values, double[][] vectors) {
+        double[][] V = new double[m][];
+        double[] alpha = new double[m];
+        double[] beta = new double[m];
+        double scale = frobeniusNorm(A);
+
+        double[] v = startVector(n, 0);
+        normalize(v);
+        int steps = 0;
+        int restarts = 0;
+        double[] w = new double[n];
+        for (int j = 0; j < m; j++) {
+            V[j] = v;
+            steps = j + 1;
+            multiply(A, n, v, w);
+            alpha[j] = dot(w, v);
+            //full reorthogonalization against the whole basis, twice is enough
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i <= j; i++) {
+                    double projection = dot(w, V[i]);
+                    for (int x = 0; x < n; x++) {
+                        w[x] -= projection * V[i][x];
+                    }
+                }
+            }
+            if (j == m - 1) {
+                beta[j] = norm(w);
+                break;
+            }
+            double b = norm(w);
+            if (b <= TOLERANCE * Math.max(scale, 1)) {
+                //the basis spans an invariant subspace, continue from a fresh direction orthogonal to it
+                b = 0;
+                w = freshDirection(V, j + 1, n, ++restarts);
+                if (w == null) {
+                    break;
+                }
+            } else {
+                for (int x = 0; x < n; x++) {
+                    w[x] /= b;
+                }
+            }
+            beta[j] = b;
+            v = w;
+            w = new double[n];
+        }
+
+        double[] d = new double[steps];
+        double[] e = new double[steps];
+        double[][] S = new double[steps][steps];
+        for (int i = 0; i < steps; i++) {
+            d[i] = alpha[i];
+            e[i] = i < steps - 1 ? beta[i] : 0;
+            S[i][i] = 1;
+        }
+        tql2(d, e, S, steps);
+
+        boolean converged = true;
+        int found = Math.min(k, steps);
+        for (int r = 0; r < found; r++) {
+            int col = steps - 1 - r;//tql2 sorts ascending
+            values[r] = d[col];
+            double[] ritz = new double[n];
+            for (int i = 0; i < steps; i++) {
+                double coefficient = S[i][col];
+                for (int x = 0; x < n; x++) {
+                    ritz[x] += coefficient * V[i][x];
+                }
+            }
+            normalize(ritz);
+            vectors[r] = ritz;
+            double residual = Math.abs(beta[steps - 1] * S[steps - 1][col]);
+            if (steps < n && residual > TOLERANCE * Math.max(Math.abs(d[col]), scale)) {
+                converged = false;
+            }
+        }
+        return converged && found == k;
+    }
+
+    //a deterministic start vector with no special structure, in particular not parallel to the all ones vector
+    private static double[] startVector(int n, int seed) {
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++) {
+            v[i] = Math.sin(1.0 + seed + (i + 1) * 0.7548776662466927);
+        }
+        return v;
+    }
+
+    private static double[] freshDirection(double[][] V, int basisSize, int n, int seed) {
+        if (basisSize >= n) {
+            return null;
+        }
+        double[] w = startVector(n, seed);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < basisSize; i++) {
+                double projection = dot(w, V[i]);
+                for (int x = 0; x < n; x++) {
+                    w[x] -= projection * V[i][x];
+                }
+            }
+        }
+        double length = norm(w);
+        if (length < TOLERANCE) {
+            return null;
+        }
+        for (int x = 0; x < n; x++) {
+            w[x] /= length;
+        }
+        return w;
+    }
+
+    /**
+     * eigenvalues and eigenvectors of a symmetric tridiagonal matrix by the implicit QL method
+     * (tql2 from EISPACK, following the JAMA version).
+     * @param d diagonal, replaced by the eigenvalues in ascending order
+     * @param e subdiagonal with e[i] = T[i][i+1] and e[n-1] = 0, destroyed
+     * @param V starts as the identity, replaced by the eigenvectors as columns
+     */
+    static void tql2(double[] d, double[] e, double[][] V, int n) {
+        double f = 0.0;
+        double tst1 = 0.0;
+        double eps = Math.pow(2.0, -52.0);
+        for (int l = 0; l < n; l++) {
+            tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+            int m = l;
+            while (m < n) {
+                if (Math.abs(e[m]) <= eps * tst1) {
+                    break;
+                }
+                m++;
+            }
+            if (m > l) {
+                do {
+                    double g = d[l];
+                    double p = (d[l + 1] - g) / (2.0 * e[l]);
+                    double r = Math.hypot(p, 1.0);
+                    if (p < 0) {
+                        r = -r;
+                    }
+                    d[l] = e[l] / (p + r);
+                    d[l + 1] = e[l] * (p + r);
+                    double dl1 = d[l + 1];
+                    double h = g - d[l];
+                    for (int i = l + 2; i < n; i++) {
+                        d[i] -= h;
+                    }
+                    f = f + h;
+
+                    p = d[m];
+                    double c = 1.0;
+                    double c2 = c;
+                    double c3 = c;
+                    double el1 = e[l + 1];
+                    double s = 0.0;
+                    double s2 = 0.0;
+                    for (int i = m - 1; i >= l; i--) {
+                        c3 = c2;
+                        c2 = c;
+                        s2 = s;
+                        g = c * e[i];
+                        h = c * p;
+                        r = Math.hypot(p, e[i]);
+                        e[i + 1] = s * r;
+                        s = e[i] / r;
+                        c = p / r;
+                        p = c * d[i] - s * g;
+                        d[i + 1] = h + s * (c * g + s * d[i]);
+                        for (int x = 0; x < n; x++) {
+                            h = V[x][i + 1];
+                            V[x][i + 1] = s * V[x][i] + c * h;
+                            V[x][i] = c * V[x][i] - s * h;
+                        }
+                    }
+                    p = -s * s2 * c3 * el1 * e[l] / dl1;
+                    e[l] = s * p;
+                    d[l] = c * p;
+                } while (Math.abs(e[l]) > eps * tst1);
+            }
+            d[l] = d[l] + f;
+            e[l] = 0.0;
+        }
+
+        //selection sort into ascending order, n is tiny
+        for (int i = 0; i < n - 1; i++) {
+            int smallest = i;
+            double p = d[i];
+            for (int j = i + 1; j < n; j++) {
+                if (d[j] < p) {
+                    smallest = j;
+                    p = d[j];
+                }
+            }
+            if (smallest != i) {
+                d[smallest] = d[i];
+                d[i] = p;
+                for (int x = 0; x < n; x++) {
+                    p = V[x][i];
+                    V[x][i] = V[x][smallest];
+                    V[x][smallest] = p;
+                }
+            }
+        }
+    }
+
+    private static void multiply(double[] A, int n, double[] v, double[] result) {
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            int row = i * n;
+            for (int j = 0; j < n; j++) {
+                sum += A[row + j] * v[j];
+            }
+            result[i] = sum;
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(double[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+    private static void normalize(double[] a) {
+        double length = norm(a);
+        if (length == 0) {
+            return;
+        }
+        for (int i = 0; i < a.length; i++) {
+            a[i] /= length;
+        }
+    }
+
+    private static double frobeniusNorm(double[] A) {
+        return norm(A);
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package GraphDrawer;
+
+import java.util.Arrays;
+
+/**
+ * everything a weighted graph drawing produces for one agent: the improved distances, the stress,
+ * the solved coordinates (so the agent can warm start from them next round) and how much work it took.
+ */
+public class LayoutResult {
+
+    public IntDoubleMap distances;
+    public double averageStress;
+
+    //solved coordinates of every vertex in the drawing: the sorted UIDs and their positions as x0,y0,x1,y1,...
+    public int[] UIDs;
+    public double[] positions;
+
+    //true if the drawing started from the previous round's coordinates instead of MDS
+    public boolean warmStarted;
+    public int unweightedIterations;
+    public int weightedIterations;
+
+    /**
+     * @return where UID's coordinates are in positions (divided by 2), or -1 if it wasn't in the drawing
+     */
+    public int indexOf(int UID) {
+        int index = Arrays.binarySearch(UIDs, UID);
+        return index < 0 ? -1 : index;
+    }
+
+    public int totalIterations() {
+        return unweightedIterations + weightedIterations;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package GraphDrawer;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+
+import java.util.Random;
+
+/**
+ * regression benchmark for graphDrawer.estimateMissingWeights.
+ * compares it against the old version, which wrapped the whole distance matrix in a RealMatrix for every
+ * disagreement it looked up, and checks that both give the same weights.
+ * <p>
+ * run with: java -classpath precompiled/cocot.jar:precompiled/commons-math3-3.3.jar GraphDrawer.WeightEstimationBenchmark
+ */
+public class WeightEstimationBenchmark {
+
+    static final int[] NEIGHBORHOOD_SIZES = {10, 30, 100};
+    static final double RANGE = 16;
+    static final double FIELD = 40;
+
+    public static void main(String[] args) {
+        Random rand = new Random(1337);
+        System.out.println(String.format("%6s, %14s, %14s, %8s, %s", "n", "old (ms/call)", "new (ms/call)", "speedup", "identical"));
+        for (int n : NEIGHBORHOOD_SIZES) {
+            double[][] distances = randomNeighborhood(n, rand);
+            int repeats = Math.max(1, 20000 / (n * n));
+
+            //warm up both before timing
+            estimateMissingWeightsWrapped(distances);
+            graphDrawer.estimateMissingWeights(distances);
+
+            long start = System.nanoTime();
+            double[][] oldWeights = null;
+            for (int r = 0; r < repeats; r++) {
+                oldWeights = estimateMissingWeightsWrapped(distances);
+            }
+            double oldMillis = (System.nanoTime() - start) / 1e6 / repeats;
+
+            start = System.nanoTime();
+            double[][] newWeights = null;
+            for (int r = 0; r < repeats; r++) {
+                newWeights = graphDrawer.estimateMissingWeights(distances);
+            }
+            double newMillis = (System.nanoTime() - start) / 1e6 / repeats;
+
+            System.out.println(String.format("%6d, %14.3f, %14.3f, %7.1fx, %s",
+                    n, oldMillis, newMillis, oldMillis / newMillis, identical(oldWeights, newWeights)));
+        }
+    }
+
+    //random agents on a field, -1 where two agents are out of range like listsToMatrix produces
+    static double[][] randomNeighborhood(int n, Random rand) {
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = rand.nextDouble() * FIELD;
+            y[i] = rand.nextDouble() * FIELD;
+        }
+        double[][] distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double trueDistance = Math.hypot(x[i] - x[j], y[i] - y[j]);
+                if (i == j) {
+                    distances[i][j] = 0;
+                } else if (trueDistance < RANGE || i == 0 || j == 0) {
+                    distances[i][j] = trueDistance * (0.8 + 0.4 * rand.nextDouble());
+                } else {
+                    distances[i][j] = -1;
+                }
+            }
+        }
+        return distances;
+    }
+
+    static boolean identical(double[][] a, double[][] b) {
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[i].length; j++) {
+                if (Double.compare(a[i][j], b[i][j]) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the estimator as it was before, looking up every disagreement through a fresh RealMatrix copy
+     */
+    static double[][] estimateMissingWeightsWrapped(double[][] distanceGuess) {
+        double[][] missingWeights = new double[distanceGuess.length][distanceGuess[0].length];
+        for (int i = 0; i < distanceGuess.length; i++) {
+            for (int j = 0; j < distanceGuess[0].length; j++) {
+                if (distanceGuess[i][j] == -1) {
+                    estimateMissingWeightsHelperWrapped(distanceGuess, missingWeights, i, j);
+                }
+            }
+        }
+        return missingWeights;
+    }
+
+    private static void estimateMissingWeightsHelperWrapped(double[][] distanceGuess, double[][] pathLookup, int i, int j) {
+        double Bij = distanceGuess[i][0] + distanceGuess[0][j];
+        double bijOther = Bij;
+        double BijWeightContribution = 0;
+        double bijOtherWeightContribution = 0;
+        for (int h = 0; h < distanceGuess.length; h++) {
+            if ((distanceGuess[i][h] != -1) && (distanceGuess[h][j] != -1)) {
+                double BijCandidate = distanceGuess[i][h] + distanceGuess[h][j];
+                if (BijCandidate < Bij || Bij == -1) {
+                    Bij = BijCandidate;
+                    BijWeightContribution = wrappedDisagreement(distanceGuess, i, h) + wrappedDisagreement(distanceGuess, j, h);
+                }
+            }
+            if (distanceGuess[i][h] > 0 &&
+                    (distanceGuess[i][h] < bijOther || bijOther <= 0)) {
+                bijOther = distanceGuess[i][h];
+                bijOtherWeightContribution = wrappedDisagreement(distanceGuess, i, h);
+            }
+            if (distanceGuess[h][j] > 0 &&
+                    (distanceGuess[h][j] < bijOther || bijOther <= 0)) {
+                bijOther = distanceGuess[h][j];
+                bijOtherWeightContribution = wrappedDisagreement(distanceGuess, i, h);
+            }
+        }
+        pathLookup[i][j] = BijWeightContribution + bijOtherWeightContribution;
+    }
+
+    private static double wrappedDisagreement(double[][] distances, int i, int j) {
+        return graphDrawer.getDisagreement(MatrixUtils.createRealMatrix(distances), i, j);
+    }
+}
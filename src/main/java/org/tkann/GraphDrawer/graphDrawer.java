@@ -23,29 +23,8 @@ import java.util.*;
 
 public class graphDrawer {
 
-	//global params - defaults set here. 
-	static double alpha = 1;
-	static double wDistance = 0;
-	static double wDisagreement = 3;
-	static double wBaseline = 1;
-	static double thresholdStressToCutoffMin = -1;
-	static double thresholdStressToCutoffMax = -1;
-	static boolean relativeDisagreement = true;
-	static boolean fractionInsteadOfExponent = false;
-
-	public static void setParams(double alpha, double wDistance, double wDisagreement,
-								  double wBaseline, boolean relativeDelta,
-								 boolean fractionInsteadOfExponent,
-								 double thresholdStressMin, double thresholdStressMax){
-		graphDrawer.alpha = alpha;
-		graphDrawer.wDistance = wDistance;
-		graphDrawer.wDisagreement = wDisagreement;
-		graphDrawer.wBaseline = wBaseline;
-		graphDrawer.thresholdStressToCutoffMin = thresholdStressMin;
-		graphDrawer.thresholdStressToCutoffMax = thresholdStressMax;
-		graphDrawer.relativeDisagreement = relativeDelta;
-		graphDrawer.fractionInsteadOfExponent = fractionInsteadOfExponent;
-	}
+	//the drawings don't keep any settings of their own, every call is given its DrawingParams.
+	//The overloads without them use DrawingParams.DEFAULTS
 
 	public static HashMap<Integer, HashMap<Integer, Double>> safeCopyEntryList(HashMap<Integer, HashMap<Integer, Double>> entryList) {
 		HashMap<Integer, HashMap<Integer, Double>> CopyOfEntry = (HashMap<Integer, HashMap<Integer, Double>>) entryList.clone();
@@ -115,6 +94,38 @@ public class graphDrawer {
 		return distanceMatrix;
 	}
 
+	/**
+	 * listsToMatrix for an unboxed entry list. Guesses to agents that aren't in the list are ignored
+	 * @param IDs the sorted UIDs of the list, which give the rows and columns of the matrix
+	 */
+	public static double[][] listsToMatrix(int CallerID, EntryList entries, int[] IDs){
+		int totalNodes = IDs.length;
+		double[][] distanceMatrix = new double[totalNodes][totalNodes];
+
+		//fill the rows of the caller and its neighbors with known distances and -1 if the distance is unknown
+		IntDoubleMap callersGuesses = entries.get(CallerID);
+		for (int slot = -1; slot < callersGuesses.size(); slot++){
+			int UID = slot < 0 ? CallerID : callersGuesses.keyAt(slot);
+			int UIDEntry = Arrays.binarySearch(IDs, UID);
+			if (UIDEntry < 0){
+				continue;
+			}
+			IntDoubleMap NeighborDistances = entries.get(UID);
+			for (int neighborUIDentry = 0; neighborUIDentry < totalNodes; neighborUIDentry++){
+				int neighborUID = IDs[neighborUIDentry];
+				if (UID == neighborUID){
+					distanceMatrix[UIDEntry][neighborUIDentry] = 0.0; // put 0 distance to self, this is always known
+				} else if (NeighborDistances.containsKey(neighborUID)) {
+					distanceMatrix[UIDEntry][neighborUIDentry] = NeighborDistances.get(neighborUID);
+				} else {
+					distanceMatrix[UIDEntry][neighborUIDentry] = -1;
+				}
+			}
+		}
+
+		return distanceMatrix;
+	}
+
 	public static HashMap<Integer, Integer> listsToUIDtoIndex(HashMap<Integer, HashMap<Integer, Double>> EntryList){
 		TreeSet<Integer> allIDs = new TreeSet<Integer>(EntryList.keySet());
 		for (int UID : EntryList.keySet()){
@@ -175,20 +186,24 @@ public class graphDrawer {
 		//return (Bij + bijOther)/2.0;
 	}
 
-	private static double[][] estimateMissingWeights(double[][] distanceGuess){
+	static double[][] estimateMissingWeights(double[][] distanceGuess){
+		return estimateMissingWeights(distanceGuess, DrawingParams.DEFAULTS);
+	}
+
+	static double[][] estimateMissingWeights(double[][] distanceGuess, DrawingParams params){
 		double[][] missingWeights = new double[distanceGuess.length][distanceGuess[0].length];
 
 		for (int i = 0; i < distanceGuess.length; i++){
  			for (int j = 0; j < distanceGuess[0].length; j++){
 				if (distanceGuess[i][j]==-1){
-					estimateMissingWeightsHelper(distanceGuess, missingWeights, i, j);
+					estimateMissingWeightsHelper(distanceGuess, missingWeights, i, j, params);
 				}
 			}
 		}
 
 		return missingWeights;
 	}
-	private static void estimateMissingWeightsHelper(double[][] distanceGuess, double[][] pathLookup, int i, int j){
+	private static void estimateMissingWeightsHelper(double[][] distanceGuess, double[][] pathLookup, int i, int j, DrawingParams params){
 		double Bij = distanceGuess[i][0]+distanceGuess[0][j];
 		double bijOther = Bij;
 		double BijWeightContribution = 0;
@@ -206,7 +221,7 @@ public class graphDrawer {
 				double BijCandidate = distanceGuess[i][h] + distanceGuess[h][j];
 				if (BijCandidate < Bij || Bij == -1) {
 					Bij = BijCandidate;
-					BijWeightContribution = getDisagreement(distanceGuess,i,h) + getDisagreement(distanceGuess,j,h);
+					BijWeightContribution = getDisagreement(distanceGuess,i,h,params) + getDisagreement(distanceGuess,j,h,params);
 											//Math.abs(distanceGuess[i][h] - distanceGuess[h][i]) + Math.abs(distanceGuess[j][h] - distanceGuess[j][i]);
 				}
 			}
@@ -219,13 +234,13 @@ public class graphDrawer {
 			if (distanceGuess[i][h] > 0 &&
 					(distanceGuess[i][h]< bijOther || bijOther <= 0)){
 				bijOther = distanceGuess[i][h];
-				bijOtherWeightContribution = getDisagreement(distanceGuess,i,h);
+				bijOtherWeightContribution = getDisagreement(distanceGuess,i,h,params);
 											//Math.abs(distanceGuess[i][h] - distanceGuess[h][j]);
 			}
 			if (distanceGuess[h][j] > 0 &&
 					(distanceGuess[h][j] < bijOther || bijOther <= 0)){
 				bijOther = distanceGuess[h][j];
-				bijOtherWeightContribution = getDisagreement(distanceGuess,i,h);
+				bijOtherWeightContribution = getDisagreement(distanceGuess,i,h,params);
 											//Math.abs(distanceGuess[i][h] - distanceGuess[h][j]);
 			}
 		}
@@ -253,6 +268,13 @@ public class graphDrawer {
 	}
 
 	public static RealMatrix MDS(RealMatrix M){
+		return MDS(M, DrawingParams.DEFAULTS);
+	}
+
+	public static RealMatrix MDS(RealMatrix M, DrawingParams params){
+		if (params.topTwoEigenSolver){
+			return MDSTopTwo(M);
+		}
 		int n = M.getColumnDimension();
 
 
@@ -282,21 +304,22 @@ public class graphDrawer {
 		}
 		//System.out.println(B);
 		EigenDecomposition BEigen = new EigenDecomposition(B);
-		//throw all the values and indicies into a hashmap to sort
 		double[] eigenValues = BEigen.getRealEigenvalues(); //there should be no imaginary ones
 
-
-		HashMap<Double,Integer> eigenvaluesToIndex = new HashMap<Double,Integer>();
+		//pick the two largest by index so equal eigenvalues stay two separate eigenpairs
+		int LargestEigenIndex = 0;
+		for (int i = 1; i < eigenValues.length; i++){
+			if (eigenValues[i] > eigenValues[LargestEigenIndex]){
+				LargestEigenIndex = i;
+			}
+		}
+		int secondLargestEigenIndex = LargestEigenIndex == 0 ? 1 : 0;
 		for (int i = 0; i < eigenValues.length; i++){
-			eigenvaluesToIndex.put(eigenValues[i],i);
+			if (i != LargestEigenIndex && eigenValues[i] > eigenValues[secondLargestEigenIndex]){
+				secondLargestEigenIndex = i;
+			}
 		}
 
-		TreeSet<Double> sortedEigenValues = new TreeSet<Double>(eigenvaluesToIndex.keySet());
-
-		Iterator<Double> iterator = sortedEigenValues.descendingIterator();
-		int LargestEigenIndex = eigenvaluesToIndex.get(iterator.next());
-		int secondLargestEigenIndex = eigenvaluesToIndex.get(iterator.next());
-
 		RealMatrix Q = MatrixUtils.createRealMatrix(n,2);
 		RealVector Q1 = BEigen.getEigenvector(LargestEigenIndex).mapDivide(Math.sqrt(eigenValues[LargestEigenIndex]));
 		RealVector Q2 = BEigen.getEigenvector(secondLargestEigenIndex).mapDivide(Math.sqrt(eigenValues[secondLargestEigenIndex]));
@@ -305,24 +328,243 @@ public class graphDrawer {
 		return Q;
 	}
 
+	/**
+	 * classical MDS like MDS(), but the double centering is done in place in O(n^2) and only the top two eigenpairs
+	 * are computed. The layout can differ from MDS() by a reflection and by round off.
+	 */
+	public static RealMatrix MDSTopTwo(RealMatrix M){
+		int n = M.getColumnDimension();
+
+		//B = -1/2 * Jn * P^2 * Jn, written out: subtract row and column means of the squared proximities, add the grand mean
+		double[] B = new double[n*n];
+		double[] rowMeans = new double[n];
+		double[] columnMeans = new double[n];
+		double grandMean = 0;
+		for (int i = 0; i < n; i++){
+			for (int j = 0; j < n; j++){
+				double entry = M.getEntry(i,j);
+				double squared = entry*entry;
+				B[i*n+j] = squared;
+				rowMeans[i] += squared;
+				columnMeans[j] += squared;
+				grandMean += squared;
+			}
+		}
+		for (int i = 0; i < n; i++){
+			rowMeans[i] /= n;
+			columnMeans[i] /= n;
+		}
+		grandMean /= (double) n*n;
+		for (int i = 0; i < n; i++){
+			for (int j = 0; j < n; j++){
+				B[i*n+j] = -0.5 * (B[i*n+j] - rowMeans[i] - columnMeans[j] + grandMean);
+			}
+		}
+
+		double[] eigenValues = new double[2];
+		double[][] eigenVectors = new double[2][];
+		LanczosEigenSolver.topEigenpairs(B, n, 2, eigenValues, eigenVectors);
+
+		RealMatrix Q = MatrixUtils.createRealMatrix(n,2);
+		for (int axis = 0; axis < 2; axis++){
+			double scale = Math.sqrt(eigenValues[axis]);
+			for (int i = 0; i < n; i++){
+				Q.setEntry(i, axis, eigenVectors[axis][i]/scale);
+			}
+		}
+		return Q;
+	}
+
 	public static RealMatrix stressMajorization(RealMatrix QfromMDS,  HashMap<Integer, HashMap<Integer, Double>> EntryList){
+		return stressMajorization(QfromMDS, EntryList, null, DrawingParams.DEFAULTS);
+	}
+
+	public static RealMatrix stressMajorization(RealMatrix QfromMDS,  HashMap<Integer, HashMap<Integer, Double>> EntryList, LayoutResult stats,
+												DrawingParams params){
 		HashMap<Integer,Integer> UIDtoIndex = listsToUIDtoIndex(EntryList);
 
-		int repeatTimes = 100;
+		//flatten the entry list once, in the same order the maps are iterated
+		int nodes = EntryList.size();
+		int[] nodeIndex = new int[nodes];
+		int[] edgeStart = new int[nodes+1];
+		int edges = 0;
+		for (HashMap<Integer,Double> guesses : EntryList.values()){
+			edges += guesses.size();
+		}
+		int[] edgeTarget = new int[edges];
+		double[] edgeDistance = new double[edges];
+		int node = 0, edge = 0;
+		for (int UIDforNodeI : EntryList.keySet()){
+			HashMap<Integer,Double> distanceGuessesForNodeI = EntryList.get(UIDforNodeI);
+			nodeIndex[node] = UIDtoIndex.get(UIDforNodeI);
+			edgeStart[node] = edge;
+			for (int UIDForNodeJ : distanceGuessesForNodeI.keySet()){
+				edgeTarget[edge] = UIDtoIndex.get(UIDForNodeJ);
+				edgeDistance[edge] = distanceGuessesForNodeI.get(UIDForNodeJ);
+				edge++;
+			}
+			node++;
+		}
+		edgeStart[nodes] = edge;
+
+		return stressMajorization(QfromMDS, nodeIndex, edgeStart, edgeTarget, edgeDistance, stats, params);
+	}
+
+	/**
+	 * the unweighted majorization of an unboxed entry list. Guesses to agents that aren't in the list are left out,
+	 * like sanitizeEntryList does for the boxed ones. The sweeps move the agents in place, so the order they're visited
+	 * in changes the drawing; agents and each agent's guesses are visited by ascending UID, so the drawing only depends
+	 * on the guesses and not on the order the neighbors were found in
+	 * @param IDs the sorted UIDs of the list, the row of each agent in QfromMDS
+	 */
+	public static RealMatrix stressMajorization(RealMatrix QfromMDS, EntryList entries, int[] IDs, LayoutResult stats, DrawingParams params){
+		int nodes = entries.size();
+		int[] nodeIndex = new int[nodes];
+		int[] edgeStart = new int[nodes+1];
+		int edges = 0;
+		//the UID in the high half and the position in the list in the low half, so sorting sorts by UID
+		long[] nodeOrder = new long[nodes];
+		for (int node = 0; node < nodes; node++){
+			nodeOrder[node] = ((long) entries.UIDAt(node) << 32) | node;
+			edges += entries.guessesAt(node).size();
+		}
+		Arrays.sort(nodeOrder);
+		int[] edgeTarget = new int[edges];
+		double[] edgeDistance = new double[edges];
+		long[] edgeOrder = new long[0];
+		int edge = 0;
+		for (int node = 0; node < nodes; node++){
+			IntDoubleMap distanceGuessesForNodeI = entries.guessesAt((int) nodeOrder[node]);
+			nodeIndex[node] = Arrays.binarySearch(IDs, (int) (nodeOrder[node] >> 32));
+			edgeStart[node] = edge;
+			if (edgeOrder.length < distanceGuessesForNodeI.size()){
+				edgeOrder = new long[distanceGuessesForNodeI.size()];
+			}
+			//IDs is sorted, so sorting by the target's row sorts by its UID
+			int targets = 0;
+			for (int slot = 0; slot < distanceGuessesForNodeI.size(); slot++){
+				int indexForJ = Arrays.binarySearch(IDs, distanceGuessesForNodeI.keyAt(slot));
+				if (indexForJ >= 0){
+					edgeOrder[targets++] = ((long) indexForJ << 32) | slot;
+				}
+			}
+			Arrays.sort(edgeOrder, 0, targets);
+			for (int target = 0; target < targets; target++){
+				edgeTarget[edge] = (int) (edgeOrder[target] >> 32);
+				edgeDistance[edge] = distanceGuessesForNodeI.valueAt((int) edgeOrder[target]);
+				edge++;
+			}
+		}
+		edgeStart[nodes] = edge;
+
+		return stressMajorization(QfromMDS, nodeIndex, edgeStart, edgeTarget, edgeDistance, stats, params);
+	}
+
+	/**
+	 * runs the unweighted majorization on a flattened entry list (see stressMajorizationPrimitive for the arrays)
+	 * with whichever kernel is selected, and writes the result back into QfromMDS.
+	 */
+	static RealMatrix stressMajorization(RealMatrix QfromMDS, int[] nodeIndex, int[] edgeStart, int[] edgeTarget,
+										 double[] edgeDistance, LayoutResult stats, DrawingParams params){
+		if (!params.primitiveKernel){
+			return stressMajorizationCommonsMath(QfromMDS, nodeIndex, edgeStart, edgeTarget, edgeDistance, stats, params);
+		}
+		int dimension = QfromMDS.getColumnDimension();
+		double[] positions = toRowMajor(QfromMDS);
+		int iterations = stressMajorizationPrimitive(positions, dimension, nodeIndex, edgeStart, edgeTarget, edgeDistance,
+				params.stressTolerance, params.stressMaxIterations);
+		if (stats != null){
+			stats.unweightedIterations = iterations;
+		}
+
+		for (int i = 0; i < QfromMDS.getRowDimension(); i++){
+			for (int k = 0; k < dimension; k++){
+				QfromMDS.setEntry(i,k,positions[i*dimension+k]);
+			}
+		}
+		return QfromMDS;
+	}
+
+	/**
+	 * the unweighted majorization sweeps on flat arrays. Each sweep moves every node, in order, to the average of where its
+	 * neighbors say it should be. The stress is summed up from the distances the update computes anyway, so checking
+	 * for convergence costs nothing extra; it's the stress of the layout as it's being swept rather than after the sweep,
+	 * which is close enough to tell when the layout stopped moving.
+	 * @param positions row-major layout, updated in place
+	 * @param dimension columns of the layout
+	 * @param nodeIndex row of each node that gets moved
+	 * @param edgeStart edges of node i are edgeStart[i] until edgeStart[i+1]
+	 * @param edgeTarget row of the neighbor at the other end of each edge
+	 * @param edgeDistance guessed distance along each edge
+	 * @param tolerance stop once the relative change in stress between sweeps falls below this, 0 to always run maxIterations
+	 * @param maxIterations the most sweeps to run
+	 * @return the number of sweeps run
+	 */
+	public static int stressMajorizationPrimitive(double[] positions, int dimension, int[] nodeIndex, int[] edgeStart,
+												  int[] edgeTarget, double[] edgeDistance, double tolerance, int maxIterations){
+		double[] Qi = new double[dimension];
+		double[] totalSum = new double[dimension];
+		double[] difference = new double[dimension];
+		double prevStress = Double.POSITIVE_INFINITY;
+		int iterationCount = 0;
+		while (iterationCount < maxIterations){
+			iterationCount++;
+			double stress = 0;
+			for (int node = 0; node < nodeIndex.length; node++){
+				int rowI = nodeIndex[node]*dimension;
+				System.arraycopy(positions, rowI, Qi, 0, dimension);
+				Arrays.fill(totalSum, 0);
+				for (int edge = edgeStart[node]; edge < edgeStart[node+1]; edge++){
+					int rowJ = edgeTarget[edge]*dimension;
+					double norm = 0;
+					for (int k = 0; k < dimension; k++){
+						difference[k] = Qi[k] - positions[rowJ+k];
+						norm += difference[k]*difference[k];
+					}
+					norm = Math.sqrt(norm);
+					double inverse = modifiedInverse(norm);
+					double distance = edgeDistance[edge];
+					for (int k = 0; k < dimension; k++){
+						totalSum[k] = totalSum[k] + (positions[rowJ+k] + (difference[k]*inverse)*distance);
+					}
+					stress += (norm - distance)*(norm - distance);
+				}
+				int size = edgeStart[node+1] - edgeStart[node];
+				for (int k = 0; k < dimension; k++){
+					positions[rowI+k] = totalSum[k]/size;//assuming I is not in distance guess for I
+				}
+			}
+			if (tolerance > 0 && (stress == 0 || Math.abs(prevStress-stress)/prevStress < tolerance)){
+				break;
+			}
+			prevStress = stress;
+		}
+		return iterationCount;
+	}
+
+	/**
+	 * the original unweighted majorization on commons-math vectors. Always runs the full stressMaxIterations sweeps,
+	 * it's kept to check stressMajorizationPrimitive against.
+	 */
+	static RealMatrix stressMajorizationCommonsMath(RealMatrix QfromMDS, int[] nodeIndex, int[] edgeStart, int[] edgeTarget,
+													double[] edgeDistance, LayoutResult stats, DrawingParams params){
+		int repeatTimes = params.stressMaxIterations;
+		if (stats != null){
+			stats.unweightedIterations = repeatTimes;
+		}
 		for (int iterationCount = 0; iterationCount<repeatTimes; iterationCount++){
-			for (int UIDforNodeI : EntryList.keySet()){
-				HashMap<Integer,Double> distanceGuessesForNodeI = EntryList.get(UIDforNodeI);
-				int indexForI = UIDtoIndex.get(UIDforNodeI);
+			for (int node = 0; node < nodeIndex.length; node++){
+				int indexForI = nodeIndex[node];
 				RealVector Qi = QfromMDS.getRowVector(indexForI);
 				RealVector totalSum = MatrixUtils.createRealVector(new double[Qi.getDimension()]);
-				for (int UIDForNodeJ : distanceGuessesForNodeI.keySet()){
-					int indexForJ = UIDtoIndex.get(UIDForNodeJ);
+				for (int edge = edgeStart[node]; edge < edgeStart[node+1]; edge++){
+					int indexForJ = edgeTarget[edge];
 					RealVector Qj = QfromMDS.getRowVector(indexForJ);
 					RealVector difference = Qi.subtract(Qj);
 					RealVector normalizedDifference = difference.mapMultiply(modifiedInverse(difference.getNorm()));
-					totalSum = totalSum.add( Qj.add(normalizedDifference.mapMultiply(distanceGuessesForNodeI.get(UIDForNodeJ))));
+					totalSum = totalSum.add( Qj.add(normalizedDifference.mapMultiply(edgeDistance[edge])));
 				}
-				totalSum = totalSum.mapDivide(distanceGuessesForNodeI.size());//assuming I is not in distance guess for I
+				totalSum = totalSum.mapDivide(edgeStart[node+1] - edgeStart[node]);//assuming I is not in distance guess for I
 				QfromMDS.setRowVector(indexForI,totalSum);
 			}
 //			if (iterationCount % 10 == 0){
@@ -363,25 +605,77 @@ public class graphDrawer {
 		return betterDistancesFromGraphDrawing;
 	}
 
+	/**
+	 * distances from the caller to each of its neighbors in the list, measured in the drawing
+	 * @param IDs the sorted UIDs of the list, the row of each agent in graphMatrix
+	 */
+	public static IntDoubleMap DistancesFromGraph(int callerID, RealMatrix graphMatrix, EntryList entries, int[] IDs){
+		IntDoubleMap CallersNeighbors = entries.get(callerID);
+		IntDoubleMap betterDistancesFromGraphDrawing = new IntDoubleMap(CallersNeighbors.size());
+		int dimension = graphMatrix.getColumnDimension();
+		int callerIndex = Arrays.binarySearch(IDs, callerID);
+		for (int slot = 0; slot < CallersNeighbors.size(); slot++){
+			int neighborUID = CallersNeighbors.keyAt(slot);
+			int neighborIndex = Arrays.binarySearch(IDs, neighborUID);
+			if (neighborIndex < 0){
+				continue;
+			}
+			double sum = 0;
+			for (int k = 0; k < dimension; k++){
+				double difference = graphMatrix.getEntry(callerIndex,k) - graphMatrix.getEntry(neighborIndex,k);
+				sum += difference*difference;
+			}
+			betterDistancesFromGraphDrawing.put(neighborUID,Math.sqrt(sum));
+		}
+
+		return betterDistancesFromGraphDrawing;
+	}
+
+	/**
+	 * the caller's guesses to the agents that are in the list, i.e. its guesses after sanitizing
+	 */
+	static IntDoubleMap callersGuessesInList(int callerID, EntryList entries, int[] IDs){
+		IntDoubleMap CallersNeighbors = entries.get(callerID);
+		IntDoubleMap inList = new IntDoubleMap(CallersNeighbors.size());
+		for (int slot = 0; slot < CallersNeighbors.size(); slot++){
+			if (Arrays.binarySearch(IDs, CallersNeighbors.keyAt(slot)) >= 0){
+				inList.put(CallersNeighbors.keyAt(slot), CallersNeighbors.valueAt(slot));
+			}
+		}
+		return inList;
+	}
+
 	public static HashMap<Integer,Double> getBetterDistancesFromGraphDrawing_ORMDS(int callerID, HashMap<Integer, HashMap<Integer, Double>> EntryList){
+		return getBetterDistancesFromGraphDrawing_ORMDS(callerID, EntryList, null);
+	}
+
+	/**
+	 * @param stats if not null, gets the number of majorization sweeps the drawing took
+	 */
+	public static HashMap<Integer,Double> getBetterDistancesFromGraphDrawing_ORMDS(int callerID, HashMap<Integer, HashMap<Integer, Double>> EntryList, LayoutResult stats){
+		return drawORMDS(callerID, GraphDrawer.EntryList.fromHashMap(safeCopyEntryList(EntryList)), stats, DrawingParams.DEFAULTS).toHashMap();
+	}
+
+	/**
+	 * the unweighted ORMDS drawing on an unboxed entry list, which isn't modified
+	 * @param stats if not null, gets the number of majorization sweeps the drawing took
+	 * @return the distances from the caller to its neighbors in the drawing
+	 */
+	public static IntDoubleMap drawORMDS(int callerID, EntryList entries, LayoutResult stats, DrawingParams params){
 		//run all the helper functions
-		EntryList = safeCopyEntryList(EntryList);
-		EntryList = sanitizeEntryList(EntryList);
-		double[][] matrixFromLists = listsToMatrix(callerID,EntryList);
+		int[] IDs = entries.sortedUIDs();
+		double[][] matrixFromLists = listsToMatrix(callerID,entries,IDs);
 		double[][] distanceMatrix = estimateMissingDistances(matrixFromLists);
 		//the matrix SHOULD be hermetian, but just in case we will force it to be
 		RealMatrix HermetianDistance = turnHermitian(MatrixUtils.createRealMatrix(distanceMatrix));
-		RealMatrix MDSEstimate = MDS(HermetianDistance);
-		RealMatrix stressMajorizedMDS = stressMajorization(MDSEstimate,EntryList);
-
-		//set up our map to return
-		HashMap<Integer,Double> betterDistancesFromGraphDrawing = DistancesFromGraph(callerID,stressMajorizedMDS,EntryList);
+		RealMatrix MDSEstimate = MDS(HermetianDistance, params);
+		RealMatrix stressMajorizedMDS = stressMajorization(MDSEstimate,entries,IDs,stats,params);
 
-		return betterDistancesFromGraphDrawing;
+		return DistancesFromGraph(callerID,stressMajorizedMDS,entries,IDs);
 	}
 
 
-	public static RealMatrix getWeightMatrix(RealMatrix distances){
+	public static RealMatrix getWeightMatrix(RealMatrix distances, DrawingParams params){
 		RealMatrix weights = distances.copy();
 		for (int i = 0; i < weights.getColumnDimension(); i++){
 			for (int j = 0; j < weights.getRowDimension(); j++){
@@ -389,8 +683,8 @@ public class graphDrawer {
 				if (j!=i){
 					double directDistance = (distances.getEntry(i,j)+distances.getEntry(j,i))/2;//average out the two guesses
 					double disagreement = Math.abs(distances.getEntry(i,j)-distances.getEntry(j,i));
-					double preWeight = wBaseline + wDistance*directDistance + wDisagreement*disagreement;
-					weight = Math.pow(preWeight,-1*alpha);
+					double preWeight = params.wBaseline + params.wDistance*directDistance + params.wDisagreement*disagreement;
+					weight = Math.pow(preWeight,-1*params.alpha);
 				}
 				//along the diagonals just set 0;
 				weights.setEntry(i,j,weight);
@@ -399,7 +693,7 @@ public class graphDrawer {
 		return weights;
 	}
 
-	public static RealMatrix getWeightMatrix2(RealMatrix distances, double[][] missingWeights){
+	public static RealMatrix getWeightMatrix2(RealMatrix distances, double[][] missingWeights, DrawingParams params){
 		RealMatrix weights = distances.copy();
 		for (int i = 0; i < weights.getColumnDimension(); i++){
 			for (int j = 0; j < weights.getRowDimension(); j++){
@@ -411,13 +705,13 @@ public class graphDrawer {
 					} else {
 						//get disagreement is a state based function that can return either
 						//relative or absolute weights
-						disagreement = getDisagreement(distances,i,j);
+						disagreement = getDisagreement(distances,i,j,params);
 					}
 					double directDistance = (distances.getEntry(i, j) + distances.getEntry(j, i)) / 2;//average out the two guesses
-					double preWeight = wBaseline + wDistance * directDistance + wDisagreement * disagreement;
+					double preWeight = params.wBaseline + params.wDistance * directDistance + params.wDisagreement * disagreement;
 
-					if (fractionInsteadOfExponent) {
-						weight = Math.pow(preWeight, -1 * alpha);
+					if (params.fractionInsteadOfExponent) {
+						weight = Math.pow(preWeight, -1 * params.alpha);
 					} else {
 						weight = Math.exp(-1 * preWeight);
 					}
@@ -431,8 +725,12 @@ public class graphDrawer {
 		return weights;
 	}
 	
-	private static double getDisagreement(RealMatrix distances, int i, int j){
-		if(relativeDisagreement){
+	static double getDisagreement(RealMatrix distances, int i, int j){
+		return getDisagreement(distances, i, j, DrawingParams.DEFAULTS);
+	}
+
+	static double getDisagreement(RealMatrix distances, int i, int j, DrawingParams params){
+		if(params.relativeDisagreement){
 			return Math.abs(distances.getEntry(i, j) - distances.getEntry(j, i))
 					/Math.abs(distances.getEntry(i, j) + distances.getEntry(j, i))
 					* 15; //scale it up so instead of [0,1] it lies within roughly the same range as others, at [0,15]
@@ -440,8 +738,15 @@ public class graphDrawer {
 			return Math.abs(distances.getEntry(i, j) - distances.getEntry(j, i));
 		}
 	}
-	private static double getDisagreement(double[][] distances, int i, int j){
-		return getDisagreement(MatrixUtils.createRealMatrix(distances), i, j);
+	//reads the array directly, wrapping it in a RealMatrix copied all n^2 entries on every call
+	static double getDisagreement(double[][] distances, int i, int j, DrawingParams params){
+		if(params.relativeDisagreement){
+			return Math.abs(distances[i][j] - distances[j][i])
+					/Math.abs(distances[i][j] + distances[j][i])
+					* 15; //same scaling as the RealMatrix version
+		} else {
+			return Math.abs(distances[i][j] - distances[j][i]);
+		}
 	}
 
 	public static double calculateStress(RealMatrix weights, RealMatrix estimate, RealMatrix trueDistances){
@@ -613,6 +918,10 @@ public class graphDrawer {
 	}
 
 	public static Pair<RealMatrix,Double> weightedStressMajorizationTry2(RealMatrix initialGuess, RealMatrix trueDistances, RealMatrix weights){
+		return weightedStressMajorizationTry2(initialGuess, trueDistances, weights, null);
+	}
+
+	public static Pair<RealMatrix,Double> weightedStressMajorizationTry2(RealMatrix initialGuess, RealMatrix trueDistances, RealMatrix weights, LayoutResult stats){
 		int MAXITERS = 100;
 		int iterCount = 0;
 		double TOLERANCE = Math.pow(10,-5);
@@ -661,57 +970,238 @@ public class graphDrawer {
 			prevStress = newStress;
 		}
 
+		if (stats != null){
+			stats.weightedIterations = iterCount;
+		}
 		return new Pair<RealMatrix, Double>(guess,prevStress);
 	}
 
 
+	/**
+	 * runs the weighted majorization with whichever kernel is selected. both kernels do the same arithmetic in
+	 * the same order, so they give identical layouts and the commons-math one can be used to check the other.
+	 */
+	public static Pair<RealMatrix,Double> weightedMajorization(RealMatrix initialGuess, RealMatrix trueDistances, RealMatrix weights){
+		return weightedMajorization(initialGuess, trueDistances, weights, null, DrawingParams.DEFAULTS);
+	}
+
+	public static Pair<RealMatrix,Double> weightedMajorization(RealMatrix initialGuess, RealMatrix trueDistances, RealMatrix weights, LayoutResult stats,
+															   DrawingParams params){
+		if (!params.primitiveKernel){
+			return weightedStressMajorizationTry2(initialGuess, trueDistances, weights, stats);
+		}
+		int n = initialGuess.getRowDimension();
+		double[] positions = toInterleaved(initialGuess);
+		double stress = weightedStressMajorizationPrimitive(positions, toRowMajor(trueDistances), toRowMajor(weights), n, stats);
+		return new Pair<RealMatrix, Double>(fromInterleaved(positions, n), stress);
+	}
+
+	/**
+	 * same update as weightedStressMajorizationTry2 but on flat arrays, with nothing allocated inside the iterations.
+	 * @param positions the layout, interleaved as x0,y0,x1,y1,... and updated in place
+	 * @param trueDistances n*n row-major target distances
+	 * @param weights n*n row-major weights
+	 * @param n number of vertices
+	 * @return the stress of the final layout
+	 */
+	public static double weightedStressMajorizationPrimitive(double[] positions, double[] trueDistances, double[] weights, int n){
+		return weightedStressMajorizationPrimitive(positions, trueDistances, weights, n, null);
+	}
+
+	public static double weightedStressMajorizationPrimitive(double[] positions, double[] trueDistances, double[] weights, int n, LayoutResult stats){
+		int MAXITERS = 100;
+		int iterCount = 0;
+		double TOLERANCE = Math.pow(10,-5);
+		double epsChange = 100;
+		double prevStress = calculateStressPrimitive(weights, positions, trueDistances, n);
+
+		while (iterCount < MAXITERS && epsChange>TOLERANCE){
+			iterCount++;
+			for (int dimension=0; dimension<2; dimension++){
+				for (int i=0; i<n; i++){
+					double numeratorSum = 0;
+					double denominatorSum = 0;
+					double Xia = positions[2*i+dimension];
+					double Xi = positions[2*i];
+					double Yi = positions[2*i+1];
+					int row = i*n;
+					for (int j=0; j<n; j++){
+						if (i!=j){
+							double weight = weights[row+j];
+							denominatorSum += weight;
+
+							double Xja = positions[2*j+dimension];
+							double dij = trueDistances[row+j];
+							double dx = Xi - positions[2*j];
+							double dy = Yi - positions[2*j+1];
+							double invDelta = modifiedInverse(Math.sqrt(dx*dx + dy*dy));
+							double component = Xja + dij*(Xia-Xja)*invDelta;
+
+							numeratorSum += weight*component;
+						}
+					}
+					//updated in place like the commons-math version, later vertices see the new value
+					positions[2*i+dimension] = numeratorSum/denominatorSum;
+				}
+			}
+
+			double newStress = calculateStressPrimitive(weights, positions, trueDistances, n);
+			epsChange = Math.abs(prevStress-newStress)/prevStress;
+			prevStress = newStress;
+		}
+
+		if (stats != null){
+			stats.weightedIterations = iterCount;
+		}
+		return prevStress;
+	}
+
+	public static double calculateStressPrimitive(double[] weights, double[] positions, double[] trueDistances, int n){
+		double stressSum = 0;
+		for (int j = 0; j<n-1; j++){
+			double Xj = positions[2*j];
+			double Yj = positions[2*j+1];
+			for (int i = j+1; i<n; i++){
+				double dx = positions[2*i] - Xj;
+				double dy = positions[2*i+1] - Yj;
+				double Error = Math.sqrt(dx*dx + dy*dy) - trueDistances[i*n+j];
+				stressSum += weights[i*n+j]*(Error*Error);
+			}
+		}
+		return stressSum;
+	}
+
+	public static double[] toRowMajor(RealMatrix M){
+		int rows = M.getRowDimension();
+		int cols = M.getColumnDimension();
+		double[] flat = new double[rows*cols];
+		for (int i = 0; i < rows; i++){
+			for (int j = 0; j < cols; j++){
+				flat[i*cols+j] = M.getEntry(i,j);
+			}
+		}
+		return flat;
+	}
+
+	//an n x 2 layout as x0,y0,x1,y1,...
+	public static double[] toInterleaved(RealMatrix layout){
+		return toRowMajor(layout);
+	}
+
+	public static RealMatrix fromInterleaved(double[] positions, int n){
+		RealMatrix layout = MatrixUtils.createRealMatrix(n,2);
+		for (int i = 0; i < n; i++){
+			layout.setEntry(i,0,positions[2*i]);
+			layout.setEntry(i,1,positions[2*i+1]);
+		}
+		return layout;
+	}
+
 	public static Pair<HashMap<Integer,Double>,Double> getBetterDistancesFromGraphDrawing_weightedORMDS(int callerID, HashMap<Integer, HashMap<Integer, Double>> EntryList){
+		LayoutResult result = drawWeightedORMDS(callerID, GraphDrawer.EntryList.fromHashMap(safeCopyEntryList(EntryList)), null, DrawingParams.DEFAULTS);
+		return new Pair<>(result.distances.toHashMap(),result.averageStress);
+	}
+
+	/**
+	 * the weighted ORMDS drawing on an unboxed entry list, which isn't modified. Optionally warm started.
+	 * @param previousLayout the caller's drawing from last round, or null for a cold start. If at least warmStartOverlap
+	 *                       of this neighborhood is in it, its coordinates replace MDS as the initial layout
+	 */
+	public static LayoutResult drawWeightedORMDS(int callerID, EntryList entries, LayoutResult previousLayout, DrawingParams params){
+		LayoutResult result = new LayoutResult();
 		//run all the helper functions
-		EntryList = safeCopyEntryList(EntryList);
-		EntryList = sanitizeEntryList(EntryList);
-		double[][] matrixFromLists = listsToMatrix(callerID,EntryList);
+		int[] IDs = entries.sortedUIDs();
+		double[][] matrixFromLists = listsToMatrix(callerID,entries,IDs);
 		double[][] distanceMatrix = estimateMissingDistances(matrixFromLists);
-		double[][] missingWeights = estimateMissingWeights(matrixFromLists);
+		double[][] missingWeights = estimateMissingWeights(matrixFromLists, params);
 		RealMatrix MatrixOfDistances = MatrixUtils.createRealMatrix(distanceMatrix);
-		RealMatrix weightMatrix = getWeightMatrix2(MatrixOfDistances, missingWeights);
+		RealMatrix weightMatrix = getWeightMatrix2(MatrixOfDistances, missingWeights, params);
 		//the matrix SHOULD be hermitian, but just in case we will force it to be
 		RealMatrix HermitianDistance = turnHermitian(MatrixOfDistances);
-		RealMatrix MDSEstimate = MDS(HermitianDistance);
-		RealMatrix stressMajorizedMDS = stressMajorization(MDSEstimate,EntryList);
-		Pair<RealMatrix,Double> results = weightedStressMajorizationTry2(stressMajorizedMDS,HermitianDistance,weightMatrix);
+		RealMatrix initialLayout = warmStartLayout(callerID, IDs, HermitianDistance, previousLayout, params);
+		result.warmStarted = initialLayout != null;
+		if (initialLayout == null){
+			initialLayout = MDS(HermitianDistance, params);
+		}
+		RealMatrix stressMajorizedMDS = stressMajorization(initialLayout,entries,IDs,result,params);
+		Pair<RealMatrix,Double> results = weightedMajorization(stressMajorizedMDS,HermitianDistance,weightMatrix,result,params);
 		RealMatrix weightedMajorization = results.getKey();
 		double totalStress = results.getValue();
 
-		double averageStress = totalStress/EntryList.get(callerID).size();
+		IntDoubleMap callersGuesses = callersGuessesInList(callerID, entries, IDs);
+		double averageStress = totalStress/callersGuesses.size();
 
 		//set up our map to return
-		HashMap<Integer,Double> betterDistancesFromGraphDrawing;
-		if ((thresholdStressToCutoffMin < averageStress|| thresholdStressToCutoffMin < 0) && //stress is above min or min unset AND
-				(averageStress < thresholdStressToCutoffMax || thresholdStressToCutoffMax < 0)){ //stress is below max or max unset
+		IntDoubleMap betterDistancesFromGraphDrawing;
+		if ((params.thresholdStressToCutoffMin < averageStress|| params.thresholdStressToCutoffMin < 0) && //stress is above min or min unset AND
+				(averageStress < params.thresholdStressToCutoffMax || params.thresholdStressToCutoffMax < 0)){ //stress is below max or max unset
 			//normal case
-			betterDistancesFromGraphDrawing = DistancesFromGraph(callerID,weightedMajorization,EntryList);
+			betterDistancesFromGraphDrawing = DistancesFromGraph(callerID,weightedMajorization,entries,IDs);
 		} else {
 			//case where stress is exceedingly high
-			betterDistancesFromGraphDrawing = EntryList.get(callerID);
+			betterDistancesFromGraphDrawing = callersGuesses;
 		}
 
-		return new Pair<>(betterDistancesFromGraphDrawing,averageStress);
+		result.distances = betterDistancesFromGraphDrawing;
+		result.averageStress = averageStress;
+		result.UIDs = IDs;
+		result.positions = toInterleaved(weightedMajorization);
+		return result;
+	}
+
+	/**
+	 * builds the initial layout from last round's coordinates, or returns null if too little of the neighborhood
+	 * was drawn last round. Vertices that are new this round are put at their estimated distance from the caller,
+	 * spread out by the golden angle so they don't start on top of each other; majorization moves them from there.
+	 */
+	static RealMatrix warmStartLayout(int callerID, int[] IDs, RealMatrix distances, LayoutResult previousLayout, DrawingParams params){
+		if (previousLayout == null || previousLayout.indexOf(callerID) < 0){
+			return null;
+		}
+		int n = IDs.length;
+		int persisted = 0;
+		for (int UID : IDs){
+			if (previousLayout.indexOf(UID) >= 0){
+				persisted++;
+			}
+		}
+		if (persisted < 3 || persisted < params.warmStartOverlap * n){
+			return null;
+		}
+
+		RealMatrix layout = MatrixUtils.createRealMatrix(n,2);
+		int previousCaller = previousLayout.indexOf(callerID);
+		int callerIndex = Arrays.binarySearch(IDs, callerID);
+		double goldenAngle = Math.PI * (3 - Math.sqrt(5));
+		for (int index = 0; index < n; index++){
+			int previous = previousLayout.indexOf(IDs[index]);
+			if (previous >= 0){
+				layout.setEntry(index, 0, previousLayout.positions[2*previous]);
+				layout.setEntry(index, 1, previousLayout.positions[2*previous+1]);
+			} else {
+				double radius = distances.getEntry(callerIndex, index);
+				double angle = goldenAngle * index;
+				layout.setEntry(index, 0, previousLayout.positions[2*previousCaller] + radius * Math.cos(angle));
+				layout.setEntry(index, 1, previousLayout.positions[2*previousCaller+1] + radius * Math.sin(angle));
+			}
+		}
+		return layout;
 	}
 
-	public static RealMatrix WORMDSGrid(int callerID, HashMap<Integer, HashMap<Integer, Double>> EntryList){
+	public static RealMatrix WORMDSGrid(int callerID, HashMap<Integer, HashMap<Integer, Double>> EntryList, DrawingParams params){
 		//run all the helper functions
 		EntryList = safeCopyEntryList(EntryList);
 		EntryList = sanitizeEntryList(EntryList);
 		double[][] matrixFromLists = listsToMatrix(callerID,EntryList);
 		double[][] distanceMatrix = estimateMissingDistances(matrixFromLists);
-		double[][] missingWeights = estimateMissingWeights(matrixFromLists);
+		double[][] missingWeights = estimateMissingWeights(matrixFromLists, params);
 		RealMatrix MatrixOfDistances = MatrixUtils.createRealMatrix(distanceMatrix);
-		RealMatrix weightMatrix = getWeightMatrix2(MatrixOfDistances, missingWeights);
+		RealMatrix weightMatrix = getWeightMatrix2(MatrixOfDistances, missingWeights, params);
 		//the matrix SHOULD be hermitian, but just in case we will force it to be
 		RealMatrix HermitianDistance = turnHermitian(MatrixOfDistances);
-		RealMatrix MDSEstimate = MDS(HermitianDistance);
-		RealMatrix stressMajorizedMDS = stressMajorization(MDSEstimate,EntryList);
-		Pair<RealMatrix,Double> results = weightedStressMajorizationTry2(stressMajorizedMDS,HermitianDistance,weightMatrix);
+		RealMatrix MDSEstimate = MDS(HermitianDistance, params);
+		RealMatrix stressMajorizedMDS = stressMajorization(MDSEstimate,EntryList,null,params);
+		Pair<RealMatrix,Double> results = weightedMajorization(stressMajorizedMDS,HermitianDistance,weightMatrix,null,params);
 		RealMatrix weightedMajorization = results.getKey();
 		return weightedMajorization;
 	}
@@ -14,7 +14,7 @@
  ** limitations under the License.
  **/
 import simulation.*;
-import GraphDrawer.graphDrawer;
+import GraphDrawer.DrawingParams;
 import simulation.Record;
 
 import java.io.BufferedWriter;
@@ -24,38 +24,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Main {
-    static String settingFile;
-    static double bounds;
-    static int numberOfRounds;
-    static double weightBias;
-    static double weightSeparation;
-    static double weightDiscrepancy;
-    static boolean fractionInsteadOfExponent;
-    static double thresholdStressToCutoffMin;
-    static double thresholdStressToCutoffMax;
-    static int numAgents;
-    static int numberMaliciuos;
-    static int maliciousIDCount;
-    static Malicious_Agent.strategy maliciousStrategy;
-    static double alpha;
-    static boolean relativeConfusion;
-    static boolean writeOutputHeader;
-    static String dataLocation;
-    static String precompiledDistances;
-    static String outputDestination;
-    static String fullOutputDestination;
-    public static boolean averageOut, stressMajorization, cliqueMDS, weightedSprings, stressMajDropNeighbor, stressMajDropLink;
-    public static long rngSeed;
-
-    public static boolean visualsON;
-
-    static String trackingNumberHumanOutput;
-
-    static DistanceMeasure distanceMeasure;
-    static boolean symmetricDefault = true;
-
     public static void main(String[] Args) throws Exception {
         parameterizedRunner(Args);
     }
@@ -101,16 +75,42 @@ public class Main {
                 double std = Metrics.getSTDofCollectionError(recordsOfPart);
                 double uAbsErr = Metrics.getAbsoluteBiasOfCollectionError(recordsOfPart);
                 double Absstd = Metrics.getSTDofCollectionAbsError(recordsOfPart);
-                double Q0Err = Metrics.getQError(recordsOfPart,0.0/4.0);
-                double Q1Err = Metrics.getQError(recordsOfPart,1.0/4.0);
-                double Q2Err = Metrics.getQError(recordsOfPart,2.0/4.0);
-                double Q3Err = Metrics.getQError(recordsOfPart,3.0/4.0);
-                double Q4Err = Metrics.getQError(recordsOfPart,4.0/4.0);
+                double[] QErr = Metrics.getQErrors(recordsOfPart, 0.0/4.0, 1.0/4.0, 2.0/4.0, 3.0/4.0, 4.0/4.0);
                 double stress = Metrics.getAverageStressOfCollection(recordsOfPart);
                 //print statistics
                 bw.write(paramValues +
                             String.format("%s,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f\n",
-                            part.toString(), nDCF3, nDCF6, nDCF10, uErr, std, uAbsErr, Absstd, Q0Err, Q1Err, Q2Err, Q3Err, Q4Err, stress)
+                            part.toString(), nDCF3, nDCF6, nDCF10, uErr, std, uAbsErr, Absstd, QErr[0], QErr[1], QErr[2], QErr[3], QErr[4], stress)
+                        );
+            }
+        }
+
+        bw.close();
+    }
+
+    //same as writeResults, but from the running accumulators instead of the records, merged over all the given metrics.
+    //The quantiles are estimates
+    private static void writeStreamedResults(HashMap<String, String> parameters, String destination, Metrics... metrics) throws IOException {
+        FileWriter fw = new FileWriter(destination, true);
+        BufferedWriter bw = new BufferedWriter(fw);
+
+        for (PartOfRound part : PartOfRound.values()){
+            RecordAccumulator accumulator = new RecordAccumulator();
+            for (Metrics source : metrics){
+                accumulator.merge(source.getAccumulator(part));
+            }
+            if (accumulator.getCount()>0) {
+                String paramValues = "";
+                for(String param : parameters.keySet()){
+                    paramValues += String.format("%s,",parameters.get(param));
+                }
+
+                double[] quantiles = accumulator.getAbsErrorSketch().quantiles(0.0/4.0, 1.0/4.0, 2.0/4.0, 3.0/4.0, 4.0/4.0);
+                bw.write(paramValues +
+                            String.format("%s,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f\n",
+                            part.toString(), accumulator.getNDCF(0), accumulator.getNDCF(1), accumulator.getNDCF(2),
+                            accumulator.getBias(), accumulator.getSTD(), accumulator.getAbsoluteBias(), accumulator.getAbsSTD(),
+                            quantiles[0], quantiles[1], quantiles[2], quantiles[3], quantiles[4], accumulator.getAverageStress())
                         );
             }
         }
@@ -120,22 +120,171 @@ public class Main {
 
     public static void parameterizedRunner(String[] Args) throws Exception {
         HashMap<String, String> parameters = parseParams(Args);
-        setParams(parameters);
-        Simulation sim = new Simulation(Main.numAgents, Main.bounds, Main.numberOfRounds, Main.settingFile);
+        long[] seeds = parseSeeds(parameters.get("rngSeeds"));
+        HyperparameterSweep sweep = parseSweep(parameters);
+        boolean writeOutputHeader = Boolean.parseBoolean(parameters.get("writeOutputHeader"));
+        if (seeds.length == 0){
+            runSimulation(parameters, buildConfig(parameters, sweep), null, writeOutputHeader);
+            return;
+        }
+
+        //one run per seed, each with its own config, up to workerThreads of them at once. The agent file, CDFs and
+        //precompiled distances never change once read, so the runs share them
+        SimulationConfig[] configs = new SimulationConfig[seeds.length];
+        for (int i = 0; i < seeds.length; i++){
+            parameters.put("rngSeed", Long.toString(seeds[i]));
+            configs[i] = buildConfig(parameters, sweep);
+        }
+        //the visuals only make sense for one run at a time
+        int concurrentRuns = configs[0].visualsON ? 1 : Math.max(1, Math.min(configs[0].workerThreads, seeds.length));
+        ExecutorService seedPool = Executors.newFixedThreadPool(concurrentRuns);
+        try {
+            ArrayList<Future<Simulation>> runs = new ArrayList<>();
+            for (SimulationConfig config : configs){
+                runs.add(seedPool.submit(() -> runSimulation(config)));
+            }
+            //the results are written in seed order, so the output is the same however many runs there are at once
+            for (int i = 0; i < seeds.length; i++){
+                Simulation sim;
+                try {
+                    sim = runs.get(i).get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                //let go of the run's records once they're written
+                runs.set(i, null);
+                parameters.put("rngSeed", Long.toString(seeds[i]));
+                writeRunResults(parameters, configs[i], sim, seeds[i], writeOutputHeader && i == 0);
+            }
+        } finally {
+            seedPool.shutdownNow();
+        }
+    }
+
+    private static Simulation runSimulation(SimulationConfig config) throws Exception {
+        Simulation sim = new Simulation(config);
         sim.runSim();
-        if(writeOutputHeader){
+        return sim;
+    }
+
+    private static void runSimulation(HashMap<String, String> parameters, SimulationConfig config,
+                                      Long seed, boolean writeHeader) throws Exception {
+        writeRunResults(parameters, config, runSimulation(config), seed, writeHeader);
+    }
+
+    /**
+     * @param seed the seed of this run when running a batch of seeds, which adds a seed column to the full and layout outputs
+     */
+    private static void writeRunResults(HashMap<String, String> parameters, SimulationConfig config, Simulation sim,
+                                        Long seed, boolean writeHeader) throws Exception {
+        String outputDestination = parameters.get("output");
+        String fullOutputDestination = parameters.get("fullOutput");
+        String layoutOutputDestination = parameters.get("layoutOutput");
+
+        if(writeHeader){
             writeResultsHeader(parameters, outputDestination);
         }
-        writeResults(parameters, sim.getRecords(),outputDestination);
+        if (config.sweep != null){
+            writeSweepResults(parameters, config, sim, outputDestination);
+            return;
+        }
+        if (config.streamRecords){
+            writeStreamedResults(parameters, outputDestination, sim.Metrics);
+        } else {
+            writeResults(parameters, sim.getRecords(), outputDestination);
+        }
         cleanOutput(fullOutputDestination);
-        if (!Main.fullOutputDestination.equalsIgnoreCase("")){
-            sim.Metrics.appendCollectionToCSV(sim.getRecords(),new File(Main.fullOutputDestination));
+        if (!fullOutputDestination.equalsIgnoreCase("")){
+            if (seed == null){
+                sim.Metrics.appendCollectionToCSV(sim.getRecords(),new File(fullOutputDestination));
+            } else {
+                sim.Metrics.appendCollectionToCSV(sim.getRecords(),new File(fullOutputDestination), seed);
+            }
+        }
+        if (!layoutOutputDestination.equalsIgnoreCase("")){
+            sim.Metrics.writeLayoutStatisticsCSV(new File(layoutOutputDestination), seed);
         }
-        if(visualsON){
+        if(config.visualsON && seed == null){
             sim.keepRedrawing();
         }
     }
 
+    /**
+     * writes the abbreviated output of every config of the sweep to output, one after the other, with the config's values
+     * in the parameter columns. The parts run before the weighted phases are shared by all the configs, so they repeat.
+     */
+    private static void writeSweepResults(HashMap<String, String> parameters, SimulationConfig config,
+                                          Simulation sim, String outputDestination) throws IOException {
+        Metrics[] sweepMetrics = sim.getSweepMetrics();
+        for (int i = 0; i < sweepMetrics.length; i++){
+            parameters.putAll(config.sweep.getConfigs().get(i).getValues());
+            if (config.streamRecords){
+                writeStreamedResults(parameters, outputDestination, sim.Metrics, sweepMetrics[i]);
+            } else {
+                ArrayList<Record> records = sim.getRecords();
+                records.addAll(sweepMetrics[i].getAllRecords());
+                writeResults(parameters, records, outputDestination);
+            }
+        }
+    }
+
+    /**
+     * reads the sweep parameters. The swept parameters are left holding the first config, which the run is set up with
+     * @return the sweep, null if there's none
+     */
+    static HyperparameterSweep parseSweep(HashMap<String, String> parameters) throws Exception {
+        HyperparameterSweep parsed = HyperparameterSweep.fromParameters(parameters, parameters.get("sweep"),
+                Integer.parseInt(parameters.get("sweepSamples")), Long.parseLong(parameters.get("rngSeed")));
+        if (parsed == null){
+            return null;
+        }
+        if (parsed.getConfigs().isEmpty()){
+            throw new Exception("the sweep has no configs, sweepSamples must be at least 1");
+        }
+        if (Boolean.parseBoolean(parameters.get("warmStart"))){
+            //a warm start would start from whichever config drew the agent's layout last
+            throw new Exception("warmStart can't be used with a sweep");
+        }
+        parameters.putAll(parsed.getConfigs().get(0).getValues());
+        return parsed;
+    }
+
+    //the most seeds rngSeeds can list, the longest array java will make
+    static final int MAX_SEEDS = Integer.MAX_VALUE - 8;
+
+    /**
+     * reads rngSeeds: either a range "first..last" or seeds separated by colons "1:5:9" (commas would break the csv)
+     * @return the seeds, none if it's empty
+     */
+    static long[] parseSeeds(String seeds) throws Exception {
+        if (seeds == null || seeds.isEmpty()){
+            return new long[0];
+        }
+        if (seeds.contains("..")){
+            String[] bounds = seeds.split("\\.\\.");
+            long first = Long.parseLong(bounds[0]);
+            long last = Long.parseLong(bounds[1]);
+            if (last < first){
+                throw new Exception("rngSeeds range "+seeds+" ends before it starts");
+            }
+            //the difference overflows to negative on ranges wider than a long
+            if (last - first < 0 || last - first >= MAX_SEEDS){
+                throw new Exception("rngSeeds range "+seeds+" has more than "+MAX_SEEDS+" seeds");
+            }
+            long[] range = new long[(int) (last - first + 1)];
+            for (int i = 0; i < range.length; i++){
+                range[i] = first + i;
+            }
+            return range;
+        }
+        String[] list = seeds.split(":");
+        long[] parsed = new long[list.length];
+        for (int i = 0; i < list.length; i++){
+            parsed[i] = Long.parseLong(list[i]);
+        }
+        return parsed;
+    }
+
 
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -177,106 +326,64 @@ public class Main {
     }
 
 
-    public static void setParams(String settingFile, double bounds,
-                                 int numAgents, int numberOfRounds,
-                                 double alpha,
-                                 double weightBias, double weightDiscrepancy,
-                                 double weightSeparation, int numMalicious,
-                                 Malicious_Agent.strategy strategy,
-                                 int sybilMultiplier, boolean fractionInsteadOfExponent,
-                                 double thresholdStressToCutoffMin, double thresholdStressToCutoffMax,
-                                 boolean relativeConfusion, String dataLocation,
-                                 DistanceMeasure distanceMeasure,
-                                 String PrecompiledDistances)
-    {
-        Main.settingFile = settingFile;
-        Main.bounds = bounds;
-        Main.numberOfRounds = numberOfRounds;
-        Main.numAgents = numAgents;
-        Main.alpha = alpha;
-        Main.weightBias = weightBias;
-        Main.weightDiscrepancy = weightDiscrepancy;
-        Main.weightSeparation = weightSeparation;
-        Main.numberMaliciuos = numMalicious;
-        Main.maliciousStrategy = strategy;
-        Main.maliciousIDCount = sybilMultiplier;
-        Main.fractionInsteadOfExponent = fractionInsteadOfExponent;
-        Main.thresholdStressToCutoffMin = thresholdStressToCutoffMin;
-        Main.thresholdStressToCutoffMax = thresholdStressToCutoffMax;
-        Main.relativeConfusion = relativeConfusion;
-        Main.distanceMeasure = distanceMeasure;
-        Agent.setInitialGuessMethod(distanceMeasure);
-        AgentHolder.distanceMeasure = distanceMeasure;
-        Main.precompiledDistances = PrecompiledDistances;
-
-        graphDrawer.setParams(Main.alpha, Main.weightSeparation, Main.weightDiscrepancy,
-                Main.weightBias, Main.relativeConfusion, Main.fractionInsteadOfExponent,
-                Main.thresholdStressToCutoffMin, Main.thresholdStressToCutoffMax);
-
-        SceneBuilder.setParams(numMalicious, maliciousIDCount, strategy,
-                                averageOut, stressMajorization, cliqueMDS,
-                                weightedSprings, stressMajDropNeighbor, stressMajDropLink );
-
-        RSSI_collector.MLLocations = dataLocation;
-        RSSI_collector.fileLocation = dataLocation;
-        RSSI_collector.seed = Main.rngSeed;
-        RSSI_collector.precompiledDistancesLocation = PrecompiledDistances;
-        RSSI_collector.defaultSymmetry = Main.symmetricDefault;
-
-        AgentHolder.seed    = Main.rngSeed;
-        AgentHolder.precompiledDistances = PrecompiledDistances;
-
-        SceneBuilder.symmetricDefault = Main.symmetricDefault;
-    }
-
-    public static void setParams(HashMap<String, String> parameters){
-
-        Main.settingFile = parameters.get("setting");
-        Main.bounds =  Double.parseDouble(parameters.get("bounds"));
-        Main.numberOfRounds = Integer.parseInt(parameters.get("numberOfRounds"));
-        Main.numAgents = Integer.parseInt(parameters.get("population"));
-        Main.alpha = Double.parseDouble(parameters.get("alpha"));
-        Main.weightBias = Double.parseDouble(parameters.get("weightBias"));
-        Main.weightDiscrepancy = Double.parseDouble(parameters.get("weightDiscrepancy"));
-        Main.weightSeparation = Double.parseDouble(parameters.get("weightSeparation"));
-        Main.numberMaliciuos = Integer.parseInt(parameters.get("numMalicious"));
-        Main.maliciousStrategy = Malicious_Agent.parseStrategy(parameters.get("maliciousStrategy"));
-        Main.maliciousIDCount = Integer.parseInt(parameters.get("sybilMultiplier"));
-        Main.fractionInsteadOfExponent = Objects.equals(parameters.get("weights"), "fractional");
-        Main.thresholdStressToCutoffMin = Double.parseDouble(parameters.get("threshStressMin"));
-        Main.thresholdStressToCutoffMax = Double.parseDouble(parameters.get("threshStressMax"));
-        Main.relativeConfusion = Objects.equals(parameters.get("delta"), "relative");
-        Main.averageOut = Boolean.parseBoolean(parameters.get("averageOut"));
-        Main.stressMajorization = Boolean.parseBoolean(parameters.get("stressMajorization"));
-        Main.cliqueMDS = Boolean.parseBoolean(parameters.get("cliqueMDS"));
-        Main.weightedSprings = Boolean.parseBoolean(parameters.get("weightedSprings"));
-        Main.stressMajDropNeighbor = Boolean.parseBoolean(parameters.get("stressMajDropNeighbor"));
-        Main.stressMajDropLink = Boolean.parseBoolean(parameters.get("stressMajDropLink"));
-        Main.writeOutputHeader = Boolean.parseBoolean(parameters.get("writeOutputHeader"));
-        Main.outputDestination = parameters.get("output");
-        Main.fullOutputDestination = parameters.get("fullOutput");
-        Main.dataLocation = parameters.get("dataLocation");
-        Main.visualsON = Boolean.parseBoolean(parameters.get("visualsON"));
-        Main.rngSeed = Long.parseLong(parameters.get("rngSeed"));
-        Main.distanceMeasure = DistanceMeasure.getDistanceMeasure(parameters.get("distanceMeasure"));
-        Main.precompiledDistances = parameters.get("PrecompiledDistances");
-        Main.symmetricDefault = Boolean.parseBoolean(parameters.get("symmetric"));
-
-
-        setParams(Main.settingFile, Main.bounds,
-                Main.numAgents, Main.numberOfRounds,
-                Main.alpha,
-                Main.weightBias, Main.weightDiscrepancy,
-                Main.weightSeparation, Main.numberMaliciuos,
-                Main.maliciousStrategy, Main.maliciousIDCount,
-                Main.fractionInsteadOfExponent,
-                Main.thresholdStressToCutoffMin,
-                Main.thresholdStressToCutoffMax,
-                Main.relativeConfusion, Main.dataLocation,
-                Main.distanceMeasure,
-                Main.precompiledDistances);
-
-        Simulation.visualsON = Main.visualsON;
+    /**
+     * the settings of a run, from the command line parameters
+     * @param sweep the hyperparameter sweep the weighted phases run over, null for none
+     */
+    public static SimulationConfig buildConfig(HashMap<String, String> parameters, HyperparameterSweep sweep){
+        boolean streamMetrics = Boolean.parseBoolean(parameters.get("streamMetrics"));
+        boolean visualsON = Boolean.parseBoolean(parameters.get("visualsON"));
+        String dataLocation = parameters.get("dataLocation");
+
+        DrawingParams drawingParams = DrawingParams.DEFAULTS
+                .withWeights(Double.parseDouble(parameters.get("alpha")),
+                        Double.parseDouble(parameters.get("weightSeparation")),
+                        Double.parseDouble(parameters.get("weightDiscrepancy")),
+                        Double.parseDouble(parameters.get("weightBias")),
+                        Objects.equals(parameters.get("delta"), "relative"),
+                        Objects.equals(parameters.get("weights"), "fractional"),
+                        Double.parseDouble(parameters.get("threshStressMin")),
+                        Double.parseDouble(parameters.get("threshStressMax")))
+                .withPrimitiveKernel(!Objects.equals(parameters.get("majorizationKernel"), "commonsMath"))
+                .withTopTwoEigenSolver(Objects.equals(parameters.get("mdsSolver"), "topTwo"))
+                .withWarmStartOverlap(Double.parseDouble(parameters.get("warmStartOverlap")))
+                .withStressConvergence(Double.parseDouble(parameters.get("stressTolerance")),
+                        Integer.parseInt(parameters.get("stressMaxIterations")));
+
+        return new SimulationConfig.Builder()
+                .scene(parameters.get("setting"), Double.parseDouble(parameters.get("bounds")),
+                        Integer.parseInt(parameters.get("population")), Integer.parseInt(parameters.get("numberOfRounds")))
+                .malicious(Integer.parseInt(parameters.get("numMalicious")),
+                        Integer.parseInt(parameters.get("sybilMultiplier")),
+                        Malicious_Agent.parseStrategy(parameters.get("maliciousStrategy")))
+                .algorithms(Boolean.parseBoolean(parameters.get("averageOut")),
+                        Boolean.parseBoolean(parameters.get("stressMajorization")),
+                        Boolean.parseBoolean(parameters.get("cliqueMDS")),
+                        Boolean.parseBoolean(parameters.get("weightedSprings")),
+                        Boolean.parseBoolean(parameters.get("stressMajDropNeighbor")),
+                        Boolean.parseBoolean(parameters.get("stressMajDropLink")))
+                .symmetric(Boolean.parseBoolean(parameters.get("symmetric")))
+                .halfStencilNeighbors(Objects.equals(parameters.get("neighborSearch"), "halfStencil"))
+                .torus(Boolean.parseBoolean(parameters.get("torus")))
+                .bounceOffEdges(Objects.equals(parameters.get("randomWalkEdges"), "bounce"))
+                .sectorsFromRanges(Objects.equals(parameters.get("sectorSize"), "maxRange"))
+                .verletSkin(Objects.equals(parameters.get("neighborLists"), "verlet") ? Double.parseDouble(parameters.get("verletSkin")) : 0)
+                .distanceMeasure(DistanceMeasure.getDistanceMeasure(parameters.get("distanceMeasure")))
+                .dataLocation(dataLocation)
+                .precompiledDistances(parameters.get("PrecompiledDistances"))
+                .seed(Long.parseLong(parameters.get("rngSeed")))
+                .rngMode(RngMode.getRngMode(parameters.get("rngStreams")))
+                .workerThreads(Integer.parseInt(parameters.get("workerThreads")))
+                .usePingTable(Objects.equals(parameters.get("rssiPing"), "table"))
+                .sceneReading(!Objects.equals(parameters.get("sceneParser"), "regex"),
+                        Boolean.parseBoolean(parameters.get("streamScene")) ? Integer.parseInt(parameters.get("sceneReadAhead")) : 0)
+                .warmStart(Boolean.parseBoolean(parameters.get("warmStart")))
+                .drawingParams(drawingParams)
+                .sweep(sweep)
+                .visualsON(visualsON)
+                //the records are only needed for the full output, the visuals, or to compute the summary from
+                .records(streamMetrics, !streamMetrics || !parameters.get("fullOutput").equalsIgnoreCase("") || visualsON)
+                .build();
     }
 
     public static HashMap<String, String> getDefaultArgs(){
@@ -308,9 +415,32 @@ public class Main {
         defaults.put("dataLocation","CDFs/");
         defaults.put("visualsON","false");
         defaults.put("rngSeed","1337");
+        defaults.put("rngSeeds","");
         defaults.put("distanceMeasure","ML");
         defaults.put("PrecompiledDistances",null);
         defaults.put("symmetric", "true");
+        defaults.put("neighborSearch", "fullStencil");
+        defaults.put("torus", "false");
+        defaults.put("randomWalkEdges", "wrap");
+        defaults.put("sectorSize", "fixed");
+        defaults.put("neighborLists", "rebuild");
+        defaults.put("verletSkin", "4");
+        defaults.put("workerThreads", "1");
+        defaults.put("rngStreams", "shared");
+        defaults.put("majorizationKernel", "primitive");
+        defaults.put("mdsSolver", "full");
+        defaults.put("warmStart", "false");
+        defaults.put("warmStartOverlap", "0.75");
+        defaults.put("layoutOutput", "");
+        defaults.put("stressTolerance", "0");
+        defaults.put("stressMaxIterations", "100");
+        defaults.put("streamMetrics", "false");
+        defaults.put("rssiPing", "sampled");
+        defaults.put("sceneParser", "tokenized");
+        defaults.put("streamScene", "false");
+        defaults.put("sceneReadAhead", "2");
+        defaults.put("sweep", "");
+        defaults.put("sweepSamples", "20");
         return defaults;
     }
 }
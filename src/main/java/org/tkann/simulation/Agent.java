@@ -15,14 +15,19 @@
  **/
 package simulation;
 
+import GraphDrawer.DrawingParams;
+import GraphDrawer.EntryList;
+import GraphDrawer.IntDoubleMap;
+import GraphDrawer.LayoutResult;
 import GraphDrawer.graphDrawer;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
-import org.apache.commons.math3.util.Pair;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Objects;
+import java.util.random.RandomGenerator;
 
 /**
  * the agent class for the agent based simulation
@@ -37,7 +42,6 @@ import java.util.Objects;
 
 public class Agent {
 
-    static long simulationTime = 0;
     /**
      * UID is used to uniquely identify agents, it essentially acts as a mac address but it's just an integer
      */
@@ -65,22 +69,22 @@ public class Agent {
     Position phonePosition; //position is phone position, such is shirtPocket or purse
 
     /**
-     * static references to objects passed to the agent by the simulation to keep track of RSSIs and Metrics,
-     * which are global references in the simulation available to all agents
+     * the holder of all the agents in the run. The agent reaches the run's settings and the RSSI and Metrics
+     * objects the simulation keeps track of through it
      */
-    static Metrics Metrics;
-    static RSSI_collector RSSI;
+    final AgentHolder holder;
 
     //storage for the agent about other neighbors and how it builds information for graph drawings
     ArrayList<Agent> listOfNeighbors;
-    HashMap<Integer, Integer> RSSI_pings; //these hashmaps map agentUIDs to something else, in this case RSSI pings
-    HashMap<PartOfRound, HashMap<Integer, Double>> partOfRoundToDistancesFromRound;
-    HashMap<Integer, Double> initialDistanceGuesses; //in this case it maps it to distances
-    HashMap<Integer, Double> finalDistanceGuesses;
+    //these maps map agentUIDs to something else, in this case RSSI pings. They're unboxed and cleared instead of
+    //reallocated every round
+    IntDoubleMap RSSI_pings;
+    EnumMap<PartOfRound, IntDoubleMap> partOfRoundToDistancesFromRound;
+    IntDoubleMap initialDistanceGuesses; //in this case it maps it to distances
+    IntDoubleMap finalDistanceGuesses;
     HashMap<Integer, ArrayList<Double>> previousGuesses; //similarly this one maps agents to a list of their previous guesses
-
-    //some utility stuff
-    static DistanceMeasure howInitialIsGuessed = DistanceMeasure.ML;
+    LayoutResult previousLayout; //this agent's last weighted drawing, for warm starting
+    int previousLayoutRound = Utility.SETUP_ROUND;
 
     /**
      * constructor for a single agent
@@ -90,33 +94,31 @@ public class Agent {
      * @param yCoord        starting y coordinate
      * @param range         maximum range at which the agent can see another agent
      * @param phonePosition the starting position that the agent's phone is held
-     * @param Metrics       static reference to the metric instance
-     * @param RSSI          static reference to the RSSI instance
+     * @param holder        the agent holder of the run
      */
     public Agent(int UID, int sceneID, double xCoord, double yCoord, double range,
-                 Position phonePosition, Metrics Metrics, RSSI_collector RSSI){
+                 Position phonePosition, AgentHolder holder){
         this.UID = UID;
         this.sceneID = sceneID;
         setCoordinates(xCoord, yCoord);
         this.range = range;
         this.phonePosition = phonePosition;
-        this.Metrics = Metrics;
-        this.RSSI = RSSI;
+        this.holder = holder;
 
 
 
         //initialize lists
         listOfNeighbors = new ArrayList<Agent>();
-        RSSI_pings = new HashMap<Integer, Integer>();
+        RSSI_pings = new IntDoubleMap();
 
-        partOfRoundToDistancesFromRound = new HashMap<PartOfRound, HashMap<Integer, Double>>();
+        partOfRoundToDistancesFromRound = new EnumMap<PartOfRound, IntDoubleMap>(PartOfRound.class);
 
         for (PartOfRound initializingPart : PartOfRound.values()) {
-            partOfRoundToDistancesFromRound.put(initializingPart, new HashMap<Integer, Double>());
+            partOfRoundToDistancesFromRound.put(initializingPart, new IntDoubleMap());
         }
 
-        initialDistanceGuesses = new HashMap<Integer, Double>();
-        finalDistanceGuesses = new HashMap<Integer, Double>();
+        initialDistanceGuesses = new IntDoubleMap();
+        finalDistanceGuesses = new IntDoubleMap();
         previousGuesses = new HashMap<Integer, ArrayList<Double>>();
     }
 
@@ -177,7 +179,7 @@ public class Agent {
      * there's no real reason for this other than it was convenient, it could've been done here
      */
     public void setRandomPhonePosition() {
-        this.phonePosition = RSSI.assignRandomPosition();
+        this.phonePosition = holder.RSSI.assignRandomPosition(UID);
     }
 
     public void setCoordinates(double xCoord, double yCoord) {
@@ -196,13 +198,9 @@ public class Agent {
     /**
      * used for getting an RSSI value of a nearby neighbor, doesn't actually alert the other neighbor
      */
-    private int pingNeighbor(Agent neighbor) {
+    private int pingNeighbor(Agent neighbor, RandomGenerator pairRandom) {
         int numberOfSamples = 150 * 4;
-        int totalSampleSum = 0;
-        for (int i = 0; i < numberOfSamples; i++) {
-            totalSampleSum += RSSI.getRSSI(phonePosition, neighbor.phonePosition, Utility.distanceBetween(this, neighbor));
-        }
-        int pingRSSIValue = totalSampleSum / numberOfSamples;
+        int pingRSSIValue = holder.RSSI.getAveragedRSSI(phonePosition, neighbor.phonePosition, Utility.distanceBetween(this, neighbor), numberOfSamples, pairRandom);
         RSSI_pings.put(neighbor.UID, pingRSSIValue);
         return pingRSSIValue;
     }
@@ -222,22 +220,28 @@ public class Agent {
      * this function just uses a linear approximation to guess the distance to a neighbor
      **/
     double guessInitialDistanceToSingleNeighbor(Agent neighbor) {
-        double guess = Utility.guessDistanceFromRSSI(this, neighbor, RSSI_pings.get(neighbor.UID));
+        double guess = Utility.guessDistanceFromRSSI(this, neighbor, (int) RSSI_pings.get(neighbor.UID));
         initialDistanceGuesses.put(neighbor.UID, guess);
         return guess;
     }
 
+    protected double guessInitialDistanceToSingleNeighbor(Agent neighbor, int NeighborRSSIPing) {
+        return guessInitialDistanceToSingleNeighbor(neighbor, NeighborRSSIPing, randomForNeighbor(neighbor));
+    }
 
-    static public void setInitialGuessMethod(DistanceMeasure guessMethod) {
-        howInitialIsGuessed = guessMethod;
+    /**
+     * the random generator for this agent's measurements of a neighbor in the current round
+     */
+    RandomGenerator randomForNeighbor(Agent neighbor) {
+        return holder.RSSI.randomFor(holder.Metrics.getCurrentRound(), UID, neighbor.UID);
     }
 
-    protected double guessInitialDistanceToSingleNeighbor(Agent neighbor, int NeighborRSSIPing) {
+    protected double guessInitialDistanceToSingleNeighbor(Agent neighbor, int NeighborRSSIPing, RandomGenerator pairRandom) {
 
         /** able to work with RSSI-esque errors or percent errors **/
         double guess;
         double actualDistance = getActualDistanceTo(neighbor);
-        switch (howInitialIsGuessed) {
+        switch (holder.config.distanceMeasure) {
             case RSSI:
                 guess = Utility.guessDistanceFromRSSI(this, neighbor, NeighborRSSIPing);
                 break;
@@ -247,23 +251,23 @@ public class Agent {
                 double bias = 0;
                 double rawErrorBounds = 0.0; //in feet
                 //create randomGuess
-                double randomPart = Math.random() / Math.nextDown(1.0); //a random float in [0,1]
+                double randomPart = nextUniform(pairRandom) / Math.nextDown(1.0); //a random float in [0,1]
                 //double percentError = -1 * percentErrorBounds * (1.0 - randomPart) + percentErrorBounds * randomPart; //this should do the same as the next line but the next line is easier to read
                 double percentError = percentErrorBounds * (-1.0 - 2 * randomPart);
-                randomPart = 2 * (Math.random() / Math.nextDown(1.0)) - 1; //grab a new random float in [-1,1]
+                randomPart = 2 * (nextUniform(pairRandom) / Math.nextDown(1.0)) - 1; //grab a new random float in [-1,1]
                 guess = actualDistance * (1 + percentError) + bias + randomPart * rawErrorBounds; // gives the distance as a % of the actual distance, i.e. 90-110%
                 //guess = actualDistance - (1 + percentError); // gives the distances + a positive error on top
                 break;
             case ML:
-                guess = RSSI.getDistanceFromRSSIML(this.phonePosition, neighbor.phonePosition, Utility.distanceBetween(this, neighbor));
+                guess = holder.RSSI.getDistanceFromRSSIML(this.phonePosition, neighbor.phonePosition, Utility.distanceBetween(this, neighbor), pairRandom);
                 break;
             case MLRSSIHybrid:
                 double guess1 = Utility.guessDistanceFromRSSI(this, neighbor, NeighborRSSIPing);
-                double guess2 = RSSI.getDistanceFromRSSIML(this.phonePosition, neighbor.phonePosition, Utility.distanceBetween(this, neighbor));
+                double guess2 = holder.RSSI.getDistanceFromRSSIML(this.phonePosition, neighbor.phonePosition, Utility.distanceBetween(this, neighbor), pairRandom);
                 guess = (guess1 + guess2) / 2;
                 break;
             case DATASET:
-                guess = RSSI.getDistanceFromPrecompiledMeasurements(simulationTime, this.UID, neighbor.UID);
+                guess = holder.RSSI.getDistanceFromPrecompiledMeasurements(holder.simulationTime, this.UID, neighbor.UID);
                 if (Double.isNaN(guess) || (guess != guess) || Objects.isNull(guess)) {
                     System.out.println("WE GOT A NAN GUESSER" + guess);
                 }
@@ -283,7 +287,7 @@ public class Agent {
 
         //after guess is approved, then record guess
         initialDistanceGuesses.put(neighbor.UID, guess);
-        Metrics.addRecord(this, neighbor, guess, PartOfRound.initialGuess);
+        holder.Metrics.addRecord(this, neighbor, guess, PartOfRound.initialGuess);
         return guess;
     }
 
@@ -292,14 +296,23 @@ public class Agent {
      **/
     public void GetInitialDistanceGuessesToNeighbors() {
         for (Agent neighbor : listOfNeighbors) {
-            int RSSIPingValue = pingNeighbor(neighbor);
+            RandomGenerator pairRandom = randomForNeighbor(neighbor);
+            int RSSIPingValue = pingNeighbor(neighbor, pairRandom);
             //int RSSIPingValue = 0;
-            guessInitialDistanceToSingleNeighbor(neighbor, RSSIPingValue);
+            guessInitialDistanceToSingleNeighbor(neighbor, RSSIPingValue, pairRandom);
+        }
+    }
+
+    //the Rand measure has always used Math.random(), keep that unless the pair has its own stream
+    private double nextUniform(RandomGenerator pairRandom) {
+        if (holder.config.rngMode == RngMode.perPair) {
+            return pairRandom.nextDouble();
         }
+        return Math.random();
     }
 
     public void AverageOutMethod() {
-        HashMap<Integer, Double> averageOutGuesses = new HashMap<>();
+        IntDoubleMap averageOutGuesses = new IntDoubleMap(listOfNeighbors.size());
         for (Agent neighbor : listOfNeighbors) {
             double myGuess = initialDistanceGuesses.get(neighbor.UID);
             double neighborGuess = neighbor.initialDistanceGuesses.get(this.UID);
@@ -318,7 +331,7 @@ public class Agent {
         // if there are fewer than 2 neighbors seen then the graph drawing doesn't apply, so we just skip it
         if (listOfNeighbors.size() > 1) {
             //we create a mapping of mappings for distances to be used with the graph drawer
-            HashMap<Integer, HashMap<Integer, Double>> neighborsDistanceGuessesForGraphDrawing = new HashMap<Integer, HashMap<Integer, Double>>();
+            EntryList neighborsDistanceGuessesForGraphDrawing = new EntryList(listOfNeighbors.size() + 1);
 
             neighborsDistanceGuessesForGraphDrawing.put(UID, initialDistanceGuesses);
             for (Agent neighbor : listOfNeighbors) {
@@ -327,15 +340,15 @@ public class Agent {
 
             //fixme debug delete me
             //for some reason a bunch of NaNs are appearing in the initialDistanceGuess lists
-            for (int key : neighborsDistanceGuessesForGraphDrawing.keySet()) {
-                HashMap<Integer, Double> inspecting = neighborsDistanceGuessesForGraphDrawing.get(key);
+            for (int index = 0; index < neighborsDistanceGuessesForGraphDrawing.size(); index++) {
+                IntDoubleMap inspecting = neighborsDistanceGuessesForGraphDrawing.guessesAt(index);
                 if (inspecting.size() == 0) {
                     for (Agent neighbor : listOfNeighbors) {
                         neighbor.GetInitialDistanceGuessesToNeighbors();
                     }
                 }
-                for (Double entry : inspecting.values()) {
-                    if (entry.isNaN()) {
+                for (int slot = 0; slot < inspecting.size(); slot++) {
+                    if (Double.isNaN(inspecting.valueAt(slot))) {
                         //fixme figure out why sometimes the distance guesses are just nan, so wonky
                         System.out.println("NAN!!!!");
                         for (Agent neighbor : listOfNeighbors) {
@@ -348,33 +361,40 @@ public class Agent {
             //fixme sometimes the graph drawing just doesn't work so i poorly use a try catch to run it back with a breakpoint
             try {
                 //finalDistanceGuesses is needed to keep track of what the agents would have heard during the broadcast state
-                finalDistanceGuesses = graphDrawer.getBetterDistancesFromGraphDrawing_ORMDS(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
+                LayoutResult layout = new LayoutResult();
+                finalDistanceGuesses.copyFrom(graphDrawer.drawORMDS(UID, neighborsDistanceGuessesForGraphDrawing, layout, holder.drawingParams));
+                holder.Metrics.recordLayout(PartOfRound.OneRoundStressMajorization, layout);
             } catch (Exception e) {
                 System.out.println("error in graph drawing");
                 e.printStackTrace();
-                finalDistanceGuesses = graphDrawer.getBetterDistancesFromGraphDrawing_ORMDS(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
-                finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+                finalDistanceGuesses.copyFrom(initialDistanceGuesses);
             }
             //debug
-            for (Double values : finalDistanceGuesses.values()) {
-                if (values.isNaN()) {
-                    System.out.println("nanGuess");
-                    finalDistanceGuesses = graphDrawer.getBetterDistancesFromGraphDrawing_ORMDS(UID, neighborsDistanceGuessesForGraphDrawing);
-                }
+            if (finalDistanceGuesses.containsNaN()) {
+                System.out.println("nanGuess");
+                finalDistanceGuesses.copyFrom(graphDrawer.drawORMDS(UID, neighborsDistanceGuessesForGraphDrawing, null, holder.drawingParams));
             }
         } else {
             //if it's just 1 or 0 neighbors, keep the initial guess since drawings don't help
-            finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+            finalDistanceGuesses.copyFrom(initialDistanceGuesses);
         }
 
         compileRecords(PartOfRound.OneRoundStressMajorization, finalDistanceGuesses);
     }
 
     public void ORMDS_weighted_dropOne() {
+        ORMDS_weighted_dropOne(holder.drawingParams, holder.Metrics, finalDistanceGuesses);
+    }
+
+    /**
+     * ORMDS_weighted_dropOne drawn with params, recorded to metrics, with the final guesses left in finalGuesses.
+     * A hyperparameter sweep runs its configs at the same time this way, each with its own of all three
+     */
+    public void ORMDS_weighted_dropOne(DrawingParams params, Metrics metrics, IntDoubleMap finalGuesses) {
         // if there are fewer than 2 neighbors seen then the graph drawing doesn't apply, so we just skip it
         if (listOfNeighbors.size() > 1) {
             //we create a mapping of mappings for distances to be used with the graph drawer
-            HashMap<Integer, HashMap<Integer, Double>> neighborsDistanceGuessesForGraphDrawing = new HashMap<Integer, HashMap<Integer, Double>>();
+            EntryList neighborsDistanceGuessesForGraphDrawing = new EntryList(listOfNeighbors.size() + 1);
 
             //fill up hashmap for neighbor estimate
             neighborsDistanceGuessesForGraphDrawing.put(UID, initialDistanceGuesses);
@@ -384,15 +404,15 @@ public class Agent {
 
             //fixme debug delete me
             //for some reason a bunch of NaNs are appearing in the initialDistanceGuess lists
-            for (int key : neighborsDistanceGuessesForGraphDrawing.keySet()) {
-                HashMap<Integer, Double> inspecting = neighborsDistanceGuessesForGraphDrawing.get(key);
+            for (int index = 0; index < neighborsDistanceGuessesForGraphDrawing.size(); index++) {
+                IntDoubleMap inspecting = neighborsDistanceGuessesForGraphDrawing.guessesAt(index);
                 if (inspecting.size() == 0) {
                     for (Agent neighbor : listOfNeighbors) {
                         neighbor.GetInitialDistanceGuessesToNeighbors();
                     }
                 }
-                for (Double entry : inspecting.values()) {
-                    if (entry.isNaN()) {
+                for (int slot = 0; slot < inspecting.size(); slot++) {
+                    if (Double.isNaN(inspecting.valueAt(slot))) {
                         //fixme figure out why sometimes the distance guesses are just nan, so wonky
                         System.out.println("NAN!!!!");
                         for (Agent neighbor : listOfNeighbors) {
@@ -402,53 +422,54 @@ public class Agent {
                 }
             }
 
-            HashMap<Integer, Double>[] listOfAttempts = (HashMap<Integer, Double>[]) new HashMap<?, ?>[listOfNeighbors.size() + 1];
+            IntDoubleMap[] listOfAttempts = new IntDoubleMap[listOfNeighbors.size() + 1];
             int[] listOfAttemptsIDS = new int[listOfNeighbors.size() + 1];
 
             //fixme sometimes the graph drawing just doesn't work so i poorly use a try catch to run it back with a breakpoint
             try {
                 //finalDistanceGuesses is needed to keep track of what the agents would have heard during the broadcast state
-                Pair<HashMap<Integer,Double>,Double> results  = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
-                listOfAttempts[0] = results.getKey();
+                LayoutResult results  = graphDrawer.drawWeightedORMDS(UID, neighborsDistanceGuessesForGraphDrawing, null, params);
+                listOfAttempts[0] = results.distances;
                 //try dropping one and then remove the one with the highest variance
                 for (int i = 1; i < listOfNeighbors.size() + 1; i++) {
                     int neighborID = listOfNeighbors.get(i - 1).UID;
-                    results = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, dropOneNeigbhbor(neighborsDistanceGuessesForGraphDrawing, neighborID));
-                    listOfAttempts[i] = results.getKey();
+                    results = graphDrawer.drawWeightedORMDS(UID, dropOneNeigbhbor(neighborsDistanceGuessesForGraphDrawing, neighborID), null, params);
+                    listOfAttempts[i] = results.distances;
                     listOfAttemptsIDS[i] = neighborID;
                 }
                 int worstNeighbor = getHighestDifference(listOfAttempts);
                 int worstNeighborID = listOfAttemptsIDS[worstNeighbor];
-                results = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, dropOneNeigbhbor(neighborsDistanceGuessesForGraphDrawing, worstNeighborID));
-                finalDistanceGuesses = results.getKey();
-                finalDistanceGuesses.put(worstNeighborID, initialDistanceGuesses.get(worstNeighborID));
+                results = graphDrawer.drawWeightedORMDS(UID, dropOneNeigbhbor(neighborsDistanceGuessesForGraphDrawing, worstNeighborID), null, params);
+                finalGuesses.copyFrom(results.distances);
+                finalGuesses.put(worstNeighborID, initialDistanceGuesses.get(worstNeighborID));
             } catch (Exception e) {
                 System.out.println("error in graph drawing");
                 e.printStackTrace();
-//                Pair<HashMap<Integer,Double>,Double> results  = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
-//                finalDistanceGuesses = results.getKey();
-                finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+                finalGuesses.copyFrom(initialDistanceGuesses);
             }
             //debug
-            for (Double values : finalDistanceGuesses.values()) {
-                if (values.isNaN()) {
-                    System.out.println("nanGuess");
-                    finalDistanceGuesses = graphDrawer.getBetterDistancesFromGraphDrawing_ORMDS(UID, neighborsDistanceGuessesForGraphDrawing);
-                }
+            if (finalGuesses.containsNaN()) {
+                System.out.println("nanGuess");
+                finalGuesses.copyFrom(graphDrawer.drawORMDS(UID, neighborsDistanceGuessesForGraphDrawing, null, params));
             }
         } else {
             //if it's just 1 or 0 neighbors, keep the initial guess since drawings don't help
-            finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+            finalGuesses.copyFrom(initialDistanceGuesses);
         }
 
-        compileRecords(PartOfRound.weightedORMDS_drop, finalDistanceGuesses);
+        compileRecords(metrics, PartOfRound.weightedORMDS_drop, finalGuesses);
     }
 
     public void ORMDS_weighted_dropLink() {
+        ORMDS_weighted_dropLink(holder.drawingParams, holder.Metrics, finalDistanceGuesses);
+    }
+
+    //see ORMDS_weighted_dropOne
+    public void ORMDS_weighted_dropLink(DrawingParams params, Metrics metrics, IntDoubleMap finalGuesses) {
         // if there are fewer than 2 neighbors seen then the graph drawing doesn't apply, so we just skip it
         if (listOfNeighbors.size() > 1) {
             //we create a mapping of mappings for distances to be used with the graph drawer
-            HashMap<Integer, HashMap<Integer, Double>> neighborsDistanceGuessesForGraphDrawing = new HashMap<Integer, HashMap<Integer, Double>>();
+            EntryList neighborsDistanceGuessesForGraphDrawing = new EntryList(listOfNeighbors.size() + 1);
 
             neighborsDistanceGuessesForGraphDrawing.put(UID, initialDistanceGuesses);
             for (Agent neighbor : listOfNeighbors) {
@@ -457,15 +478,15 @@ public class Agent {
 
             //fixme debug delete me
             //for some reason a bunch of NaNs are appearing in the initialDistanceGuess lists
-            for (int key : neighborsDistanceGuessesForGraphDrawing.keySet()) {
-                HashMap<Integer, Double> inspecting = neighborsDistanceGuessesForGraphDrawing.get(key);
+            for (int index = 0; index < neighborsDistanceGuessesForGraphDrawing.size(); index++) {
+                IntDoubleMap inspecting = neighborsDistanceGuessesForGraphDrawing.guessesAt(index);
                 if (inspecting.size() == 0) {
                     for (Agent neighbor : listOfNeighbors) {
                         neighbor.GetInitialDistanceGuessesToNeighbors();
                     }
                 }
-                for (Double entry : inspecting.values()) {
-                    if (entry.isNaN()) {
+                for (int slot = 0; slot < inspecting.size(); slot++) {
+                    if (Double.isNaN(inspecting.valueAt(slot))) {
                         //fixme figure out why sometimes the distance guesses are just nan, so wonky
                         System.out.println("NAN!!!!");
                         for (Agent neighbor : listOfNeighbors) {
@@ -475,7 +496,7 @@ public class Agent {
                 }
             }
 
-            HashMap<Integer, Double>[] listOfAttempts = (HashMap<Integer, Double>[]) new HashMap<?, ?>[1 + listOfNeighbors.size() * listOfNeighbors.size()];
+            IntDoubleMap[] listOfAttempts = new IntDoubleMap[1 + listOfNeighbors.size() * listOfNeighbors.size()];
             int[] listOfAttemptsIDS1 = new int[1 + listOfNeighbors.size() * listOfNeighbors.size()];
             int[] listOfAttemptsIDS2 = new int[1 + listOfNeighbors.size() * listOfNeighbors.size()];
 
@@ -483,8 +504,8 @@ public class Agent {
             //fixme sometimes the graph drawing just doesn't work so i poorly use a try catch to run it back with a breakpoint
             try {
                 //finalDistanceGuesses is needed to keep track of what the agents would have heard during the broadcast state
-                Pair<HashMap<Integer,Double>,Double> results  = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
-                listOfAttempts[0] = results.getKey();
+                LayoutResult results  = graphDrawer.drawWeightedORMDS(UID, neighborsDistanceGuessesForGraphDrawing, null, params);
+                listOfAttempts[0] = results.distances;
 
                 //try dropping one and then remove the one with the highest variance
                 int count = 1;
@@ -493,8 +514,8 @@ public class Agent {
                     for (int j = 0; j < listOfNeighbors.size(); j++) {
                         int neighborID2 = listOfNeighbors.get(j).UID;
 
-                        results  = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, dropOneLink(neighborsDistanceGuessesForGraphDrawing, neighborID1, neighborID2));
-                        listOfAttempts[count] = results.getKey();
+                        results  = graphDrawer.drawWeightedORMDS(UID, dropOneLink(neighborsDistanceGuessesForGraphDrawing, neighborID1, neighborID2), null, params);
+                        listOfAttempts[count] = results.distances;
 
                         listOfAttemptsIDS1[count] = neighborID1;
                         listOfAttemptsIDS2[count] = neighborID2;
@@ -505,42 +526,62 @@ public class Agent {
                 int worstAttemp = getHighestDifference(listOfAttempts);
                 int worstNeighborID1 = listOfAttemptsIDS1[worstAttemp];
                 int worstNeighborID2 = listOfAttemptsIDS2[worstAttemp];
-                results  =  graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, dropOneLink(neighborsDistanceGuessesForGraphDrawing, worstNeighborID1, worstNeighborID2));
-                finalDistanceGuesses = results.getKey();
+                results  =  graphDrawer.drawWeightedORMDS(UID, dropOneLink(neighborsDistanceGuessesForGraphDrawing, worstNeighborID1, worstNeighborID2), null, params);
+                finalGuesses.copyFrom(results.distances);
                 //finalDistanceGuesses.put(worstNeighborID,initialDistanceGuesses.get(worstNeighborID));
             } catch (Exception e) {
                 System.out.println("error in graph drawing");
                 e.printStackTrace();
-                Pair<HashMap<Integer,Double>,Double> results  = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
-                finalDistanceGuesses = results.getKey();
-                finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+                finalGuesses.copyFrom(initialDistanceGuesses);
             }
             //debug
-            for (Double values : finalDistanceGuesses.values()) {
-                if (values.isNaN()) {
-                    System.out.println("nanGuess");
-                    finalDistanceGuesses = graphDrawer.getBetterDistancesFromGraphDrawing_ORMDS(UID, neighborsDistanceGuessesForGraphDrawing);
-                }
+            if (finalGuesses.containsNaN()) {
+                System.out.println("nanGuess");
+                finalGuesses.copyFrom(graphDrawer.drawORMDS(UID, neighborsDistanceGuessesForGraphDrawing, null, params));
             }
         } else {
             //if it's just 1 or 0 neighbors, keep the initial guess since drawings don't help
-            finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+            finalGuesses.copyFrom(initialDistanceGuesses);
         }
 
-        compileRecords(PartOfRound.weightedORMDS_dropLink, finalDistanceGuesses);
+        compileRecords(metrics, PartOfRound.weightedORMDS_dropLink, finalGuesses);
     }
 
-    private int getHighestDifference(HashMap<Integer, Double>[] listOfAttempts) {
-        HashMap<Integer, Double> baseline = listOfAttempts[0];
+    /**
+     * true if a graph drawing phase would find an empty or NaN guess list in this agent's neighborhood and
+     * re-run its neighbors' initial guesses (see the fixme blocks above)
+     */
+    boolean neighborhoodNeedsRepair() {
+        if (listOfNeighbors.size() <= 1) {
+            return false;
+        }
+        if (hasMissingGuesses(initialDistanceGuesses)) {
+            return true;
+        }
+        for (Agent neighbor : listOfNeighbors) {
+            if (hasMissingGuesses(neighbor.initialDistanceGuesses)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasMissingGuesses(IntDoubleMap guesses) {
+        return guesses.size() == 0 || guesses.containsNaN();
+    }
+
+    private int getHighestDifference(IntDoubleMap[] listOfAttempts) {
+        IntDoubleMap baseline = listOfAttempts[0];
         double[] sumOfRelativeDeltas = new double[listOfAttempts.length];
         double maxDiff = -1;
         int idOfMaxDiff = -1;
         for (int i = 1; i < listOfAttempts.length; i++) {
-            HashMap<Integer, Double> comparator = listOfAttempts[i];
+            IntDoubleMap comparator = listOfAttempts[i];
             double relativeDeltaSum = 0;
-            for (Integer neighborID : baseline.keySet()) {
+            for (int slot = 0; slot < baseline.size(); slot++) {
+                int neighborID = baseline.keyAt(slot);
                 if (comparator.containsKey(neighborID)) {
-                    double base = baseline.get(neighborID);
+                    double base = baseline.valueAt(slot);
                     double newMeasure = comparator.get(neighborID);
                     relativeDeltaSum += Math.abs((base - newMeasure) / ((base + newMeasure) / 2));
                 }
@@ -554,26 +595,36 @@ public class Agent {
         return idOfMaxDiff;
     }
 
-    private HashMap<Integer, HashMap<Integer, Double>> dropOneNeigbhbor(HashMap<Integer, HashMap<Integer, Double>> neighborsDistanceGuessesForGraphDrawing, int UID) {
-        HashMap<Integer, HashMap<Integer, Double>> localDistances = graphDrawer.safeCopyEntryList(neighborsDistanceGuessesForGraphDrawing);
+    private EntryList dropOneNeigbhbor(EntryList neighborsDistanceGuessesForGraphDrawing, int UID) {
+        EntryList localDistances = neighborsDistanceGuessesForGraphDrawing.copy();
         localDistances.remove(UID);
         return localDistances;
     }
 
-    private HashMap<Integer, HashMap<Integer, Double>> dropOneLink(HashMap<Integer, HashMap<Integer, Double>> neighborsDistanceGuessesForGraphDrawing, int UID1, int UID2) {
-        HashMap<Integer, HashMap<Integer, Double>> localDistances = graphDrawer.safeCopyEntryList(neighborsDistanceGuessesForGraphDrawing);
-        localDistances.get(UID1).remove(UID2);
-        localDistances.get(UID2).remove(UID1);
+    private EntryList dropOneLink(EntryList neighborsDistanceGuessesForGraphDrawing, int UID1, int UID2) {
+        //the copy shares the guess maps, so the two that change are copied first
+        EntryList localDistances = neighborsDistanceGuessesForGraphDrawing.copy();
+        IntDoubleMap guessesOf1 = localDistances.get(UID1).copy();
+        guessesOf1.remove(UID2);
+        localDistances.put(UID1, guessesOf1);
+        IntDoubleMap guessesOf2 = localDistances.get(UID2).copy();
+        guessesOf2.remove(UID1);
+        localDistances.put(UID2, guessesOf2);
         return localDistances;
     }
 
 
     public void ORMDS_weighted() {
+        ORMDS_weighted(holder.drawingParams, holder.Metrics, finalDistanceGuesses);
+    }
+
+    //see ORMDS_weighted_dropOne
+    public void ORMDS_weighted(DrawingParams params, Metrics metrics, IntDoubleMap finalGuesses) {
         double stress = 0;
         // if there are fewer than 2 neighbors seen then the graph drawing doesn't apply, so we just skip it
         if (listOfNeighbors.size() > 2) {
             //we create a mapping of mappings for distances to be used with the graph drawer
-            HashMap<Integer, HashMap<Integer, Double>> neighborsDistanceGuessesForGraphDrawing = new HashMap<Integer, HashMap<Integer, Double>>();
+            EntryList neighborsDistanceGuessesForGraphDrawing = new EntryList(listOfNeighbors.size() + 1);
 
             neighborsDistanceGuessesForGraphDrawing.put(UID, initialDistanceGuesses);
             for (Agent neighbor : listOfNeighbors) {
@@ -582,15 +633,15 @@ public class Agent {
 
             //fixme debug delete me
             //for some reason a bunch of NaNs are appearing in the initialDistanceGuess lists
-            for (int key : neighborsDistanceGuessesForGraphDrawing.keySet()) {
-                HashMap<Integer, Double> inspecting = neighborsDistanceGuessesForGraphDrawing.get(key);
+            for (int index = 0; index < neighborsDistanceGuessesForGraphDrawing.size(); index++) {
+                IntDoubleMap inspecting = neighborsDistanceGuessesForGraphDrawing.guessesAt(index);
                 if (inspecting.size() == 0) {
                     for (Agent neighbor : listOfNeighbors) {
                         neighbor.GetInitialDistanceGuessesToNeighbors();
                     }
                 }
-                for (Double entry : inspecting.values()) {
-                    if (entry.isNaN()) {
+                for (int slot = 0; slot < inspecting.size(); slot++) {
+                    if (Double.isNaN(inspecting.valueAt(slot))) {
                         //fixme figure out why sometimes the distance guesses are just nan, so wonky
                         System.out.println("nan in initialGuess");
                         for (Agent neighbor : listOfNeighbors) {
@@ -602,15 +653,24 @@ public class Agent {
             //fixme sometimes the graph drawing just doesn't work so i poorly use a try catch to run it back with a breakpoint
             try {
                 //finalDistanceGuesses is needed to keep track of what the agents would have heard during the broadcast state
-                Pair<HashMap<Integer, Double>, Double> results = graphDrawer.getBetterDistancesFromGraphDrawing_weightedORMDS(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
-                finalDistanceGuesses = results.getKey();
-                stress = results.getValue();
+                //a layout is only worth starting from if it was drawn last round
+                int currentRound = metrics.getCurrentRound();
+                boolean warmStart = holder.config.warmStart;
+                LayoutResult startingLayout = (warmStart && previousLayoutRound == currentRound - 1) ? previousLayout : null;
+                LayoutResult results = graphDrawer.drawWeightedORMDS(UID, neighborsDistanceGuessesForGraphDrawing, startingLayout, params);
+                finalGuesses.copyFrom(results.distances);
+                stress = results.averageStress;
+                metrics.recordLayout(PartOfRound.weightedORMDS, results);
+                if (warmStart) {
+                    previousLayout = results;
+                    previousLayoutRound = currentRound;
+                }
 
                 //debug for figure
                 boolean visualExperiment = false;
                 if (visualExperiment) {
-                    RealMatrix locationsOfNeighbors = graphDrawer.WORMDSGrid(UID, (HashMap<Integer, HashMap<Integer, Double>>) neighborsDistanceGuessesForGraphDrawing.clone());
-                    HashMap<Integer, Integer> UIDtoIndex = graphDrawer.listsToUIDtoIndex(neighborsDistanceGuessesForGraphDrawing);
+                    RealMatrix locationsOfNeighbors = graphDrawer.WORMDSGrid(UID, neighborsDistanceGuessesForGraphDrawing.toHashMap(), params);
+                    HashMap<Integer, Integer> UIDtoIndex = graphDrawer.listsToUIDtoIndex(neighborsDistanceGuessesForGraphDrawing.toHashMap());
                     System.out.println("estimations from agent " + this.UID);
                     System.out.println(String.format("%6s, %6s, %6s, %6s, %6s", "UID", "trueX", "trueY", "estX", "estY"));
                     RealVector correspRow = locationsOfNeighbors.getRowVector(0);
@@ -630,20 +690,18 @@ public class Agent {
                 stress = 0;
             }
             //debug
-            for (Double value : finalDistanceGuesses.values()) {
-                if (value.isNaN()) {
-                    // numerical isntability or impossible configuration. Just keep the initial guess as a fallback
-//                    System.out.println("nan in final weieghtedORMDS");
-                    finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
-                }
+            if (finalGuesses.containsNaN()) {
+                // numerical isntability or impossible configuration. Just keep the initial guess as a fallback
+//                System.out.println("nan in final weieghtedORMDS");
+                finalGuesses.copyFrom(initialDistanceGuesses);
             }
         } else {
             //if there are fewer than 4 neighbors, keep the initial guess since drawings don't help
-            finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+            finalGuesses.copyFrom(initialDistanceGuesses);
             return;
         }
 
-        compileRecords(PartOfRound.weightedORMDS, finalDistanceGuesses, stress);
+        compileRecords(metrics, PartOfRound.weightedORMDS, finalGuesses, stress);
     }
 
     private Agent getagentByID(int UID){
@@ -660,13 +718,13 @@ public class Agent {
     }
 
     public void CliqueMDS() {
-        HashMap<Integer, Double> cliqueDistances = new HashMap<>();
+        IntDoubleMap cliqueDistances;
         if (listOfNeighbors.size() > 2) {
             HashMap<Integer, ArrayList<Agent>> maxCliques = findMaxCliques();
-            HashMap<Integer, Double> newCliqueDistances = getDistancesOfCliques(maxCliques);
+            IntDoubleMap newCliqueDistances = getDistancesOfCliques(maxCliques);
             cliqueDistances = updateDistances(initialDistanceGuesses, newCliqueDistances);
         } else {
-            cliqueDistances = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+            cliqueDistances = initialDistanceGuesses.copy();
         }
 
         compileRecords(PartOfRound.cliqueMDS, cliqueDistances);
@@ -710,15 +768,15 @@ public class Agent {
         return recursiveMaximalClique;
     }
 
-    public HashMap<Integer, Double> getDistancesOfCliques(HashMap<Integer, ArrayList<Agent>> cliques) {
-        HashMap<Integer, Double> cliqueGuesses = new HashMap<>();
+    public IntDoubleMap getDistancesOfCliques(HashMap<Integer, ArrayList<Agent>> cliques) {
+        IntDoubleMap cliqueGuesses = new IntDoubleMap(listOfNeighbors.size());
         for (Agent neighbor : listOfNeighbors) {
-            HashMap<Integer, HashMap<Integer, Double>> cliqueDistances = new HashMap<>();
             ArrayList<Agent> cliqueMembers = cliques.get(neighbor.UID);
             if (!Objects.isNull(cliqueMembers) && cliqueMembers.size() > 3) {
+                EntryList cliqueDistances = new EntryList(cliqueMembers.size());
                 for (Agent member : cliqueMembers) {
                     int memberUID = member.UID;
-                    HashMap<Integer, Double> memberGuesses = new HashMap<>();
+                    IntDoubleMap memberGuesses = new IntDoubleMap(cliqueMembers.size());
 
                     for (Agent otherMember : cliqueMembers) {
                         if (otherMember.UID != memberUID) {
@@ -729,12 +787,12 @@ public class Agent {
                     cliqueDistances.put(memberUID, memberGuesses);
                 }
                 //todo the caller isn't getting added to cliqueDistances for some reason, figure out why.
-                HashMap<Integer, Double> thisCliqueGuess;
+                IntDoubleMap thisCliqueGuess;
                 try {
-                    thisCliqueGuess = graphDrawer.getBetterDistancesFromGraphDrawing_ORMDS(UID, cliqueDistances);
+                    thisCliqueGuess = graphDrawer.drawORMDS(UID, cliqueDistances, null, holder.drawingParams);
                 } catch (Exception e) {
                     e.printStackTrace();
-                    thisCliqueGuess = graphDrawer.getBetterDistancesFromGraphDrawing_ORMDS(UID, cliqueDistances);
+                    thisCliqueGuess = graphDrawer.drawORMDS(UID, cliqueDistances, null, holder.drawingParams);
                 }
                 cliqueGuesses.put(neighbor.UID, thisCliqueGuess.get(neighbor.UID));
             }
@@ -742,31 +800,38 @@ public class Agent {
         return cliqueGuesses;
     }
 
-    public HashMap<Integer, Double> updateDistances(HashMap<Integer, Double> initialGuesses, HashMap<Integer, Double> updatedGuesses) {
-        HashMap<Integer, Double> toReturn = new HashMap<>();
-        toReturn.putAll(initialGuesses);
+    public IntDoubleMap updateDistances(IntDoubleMap initialGuesses, IntDoubleMap updatedGuesses) {
+        IntDoubleMap toReturn = initialGuesses.copy();
         toReturn.putAll(updatedGuesses);
         return toReturn;
     }
 
     public double measureAccuracy() {
-        ArrayList<Record> myRecords = Metrics.getAllRecords();
+        ArrayList<Record> myRecords = holder.Metrics.getAllRecords();
         myRecords = Metrics.filterByRecordingAgent(myRecords, this.UID);
         return Metrics.getPercentCorrectGuessesOfCollection(myRecords);
     }
 
 
-    private void compileRecords(PartOfRound recordingPart, HashMap<Integer, Double> distanceGuesses) {
+    private void compileRecords(PartOfRound recordingPart, IntDoubleMap distanceGuesses) {
+        compileRecords(holder.Metrics, recordingPart, distanceGuesses);
+    }
+    private void compileRecords(PartOfRound recordingPart, IntDoubleMap distanceGuesses, double finalStress){
+        compileRecords(holder.Metrics, recordingPart, distanceGuesses, finalStress);
+    }
+
+    private void compileRecords(Metrics metrics, PartOfRound recordingPart, IntDoubleMap distanceGuesses) {
         for (Agent neighbor : listOfNeighbors) {
             if (distanceGuesses.containsKey(neighbor.UID)) {
-                Metrics.addRecord(this, neighbor, distanceGuesses.get(neighbor.UID), recordingPart);
+                metrics.addRecord(this, neighbor, distanceGuesses.get(neighbor.UID), recordingPart);
             }
         }
     }
-    private void compileRecords(PartOfRound recordingPart, HashMap<Integer, Double> distanceGuesses, double finalStress){
+
+    private void compileRecords(Metrics metrics, PartOfRound recordingPart, IntDoubleMap distanceGuesses, double finalStress){
         for (Agent neighbor : listOfNeighbors) {
             if (distanceGuesses.containsKey(neighbor.UID)) {
-                Metrics.addRecord(this, neighbor, distanceGuesses.get(neighbor.UID), recordingPart, finalStress);
+                metrics.addRecord(this, neighbor, distanceGuesses.get(neighbor.UID), recordingPart, finalStress);
             }
         }
     }
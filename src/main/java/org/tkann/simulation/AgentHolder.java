@@ -15,8 +15,20 @@
  **/
 package simulation;
 
+import GraphDrawer.DrawingParams;
+import GraphDrawer.IntDoubleMap;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
 a single class that holds our agent array as well as keeps
@@ -34,6 +46,35 @@ public class AgentHolder {
     int numberOfXSectors;
     int numberOfYSectors;
     public Sector[][] sectors;
+    //where the active agents are this round, for the neighbor search. See SpatialGrid
+    SpatialGrid grid;
+    //whether the field wraps around, so agents near opposite edges can be neighbors. Only random scenes can be a torus
+    final boolean torus;
+    //the cells a neighbor search looks in, reused by every query
+    private final int[] nearbyCells = new int[9];
+    //the cells after a cell that the half stencil pairs it with: up, then the three to its right
+    private static final int[][] forwardCells = {{0, 1}, {1, -1}, {1, 0}, {1, 1}};
+
+    //the neighbors the half stencil found this round, in compressed rows. The neighbors of the grid's i-th input agent
+    //are the input agents neighborTargets[neighborOffsets[i]] up to neighborTargets[neighborOffsets[i+1]-1]
+    int[] neighborOffsets = new int[1];
+    int[] neighborTargets = new int[0];
+    //the pairs in range, as the grid's input indices, before they're put into rows
+    private int[] pairFrom = new int[0], pairTo = new int[0];
+    private int[] rowFill = new int[0];
+
+    //the incremental neighbor search (config.verletSkin > 0) keeps, for each of the grid's input agents, the agents that
+    //were within its range plus the skin when the candidates were last found, in compressed rows like the neighbors above.
+    //Each round only those are checked, until the agents have moved far enough that someone else could be in range
+    private SpatialGrid verletGrid;
+    int[] candidateOffsets = new int[1];
+    int[] candidateTargets = new int[0];
+    //who the candidates were found for and where they were then
+    private Agent[] candidatesFoundFor = new Agent[0];
+    private int numberOfCandidateRows = -1;
+    private double[] xWhenFound = new double[0], yWhenFound = new double[0];
+    //how many times the candidates have been found from scratch
+    int candidateRebuilds = 0;
 
     //details about the agents that we house
     int numberOfAgents, numberOfMaliciousAgents, currentNumberOfAgents;
@@ -42,34 +83,38 @@ public class AgentHolder {
     Malicious_Agent.strategy adversaryStrategy;
     public ArrayList<Agent> allAgents, allBenignAgents, allMaliciousAgents;
 
+    //the range random agents are drawn up to, and the smallest the sectors are unless config.sectorsFromRanges
     final double agentMaxRange = 30;
 
-    //static references to objects passed to the agent by the simulation to keep track of RSSIs and Metrics,
-    //these are global references
-    static Metrics Metrics;
-    static RSSI_collector RSSI;
-    static Random rand = new Random();
-    public static long seed = 8008135;
+    //the run's settings, and the objects the simulation passes down to keep track of RSSIs and Metrics.
+    //the agents reach all of these through their holder
+    final SimulationConfig config;
+    Metrics Metrics;
+    final RSSI_collector RSSI;
+    final Random rand;
+    //the settings the graph drawings are run with; a sweep passes each config its own instead
+    final DrawingParams drawingParams;
+    //time of the current round, from the agent file's round headers
+    long simulationTime = 0;
+
+    //the pools are shared by every holder with the same number of threads. Their threads are daemons, so they never hold up exit
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> workerPools = new ConcurrentHashMap<>();
 
-    public static DistanceMeasure distanceMeasure;
-    public static String precompiledDistances;
+    //the records of the weighted phases of each config of the sweep, in the sweep's order
+    private Metrics[] sweepMetrics;
 
     //constructor
-    public AgentHolder(int numberOfAgents, int numberOfMaliciousAgents, int maliciousSybilIdentities,
-                       Malicious_Agent.strategy strategy,
-                       double bounds, Metrics Metrics, RSSI_collector RSSI){
-        this(numberOfAgents, numberOfAgents, maliciousSybilIdentities,
-                            strategy,
-                            bounds,bounds,Metrics,RSSI);
+    public AgentHolder(int numberOfAgents, double bounds, SimulationConfig config, Metrics Metrics, RSSI_collector RSSI){
+        this(numberOfAgents, bounds, bounds, config, Metrics, RSSI);
     }
 
-    public AgentHolder(int numberOfAgents, int numberOfMaliciousAgents, int maliciousSybilIdentities,
-                       Malicious_Agent.strategy strategy,
-                       double Xbounds, double Ybounds, Metrics Metrics, RSSI_collector RSSI){
+    public AgentHolder(int numberOfAgents, double Xbounds, double Ybounds, SimulationConfig config, Metrics Metrics, RSSI_collector RSSI){
+        this.config = config;
+        this.drawingParams = config.drawingParams;
         this.numberOfAgents = numberOfAgents;
-        this.numberOfMaliciousAgents = numberOfMaliciousAgents;
-        this.SybilIdentityCount = maliciousSybilIdentities;
-        this.adversaryStrategy = strategy;
+        this.numberOfMaliciousAgents = config.numberOfMaliciousAgents;
+        this.SybilIdentityCount = config.maliciousIDCount;
+        this.adversaryStrategy = config.strategy;
         this.currentNumberOfAgents = 0;
         this.currentNumberOfIdentities = 0;
         this.currentNumberOfBenignIdentities = 0;
@@ -77,18 +122,24 @@ public class AgentHolder {
 
         this.xBounds = Xbounds;
         this.yBounds = Ybounds;
+        this.torus = config.torus && config.settingFile.isEmpty();
 
         this.Metrics = Metrics;
         this.RSSI = RSSI;
 
         rand = new Random();
-        rand.setSeed(seed);
+        rand.setSeed(config.seed);
+
+        if (config.sweep != null){
+            sweepMetrics = new Metrics[config.sweep.getConfigs().size()];
+            for (int i = 0; i < sweepMetrics.length; i++){
+                sweepMetrics[i] = new Metrics(0, Metrics.getTotalNumberOfRounds(), config.streamRecords, config.retainRecords);
+            }
+        }
 
         allAgents = new ArrayList<Agent>();
         allBenignAgents = new ArrayList<Agent>();
         allMaliciousAgents = new ArrayList<Agent>();
-
-        createSectors();
     }
 
     public ArrayList<Agent> getActiveAgents(){
@@ -125,35 +176,64 @@ public class AgentHolder {
     we use sectors to avoid the findNeighbors() function being n^2 time and instead make it roughly constant time.
 
     the sectors are as large as the largest agent's range and therefore garuntee that all neighbors lie at most 1 sector
-    away from the current agent.
+    away from the current agent. They're made once all the agents are added, see getSectorSize
      */
-    private void createSectors(){
-        //sectors are based on the agent max range, therefore we overshoot on the sectors to ensure we're covered
-        //this tells us how many sectors we need
-        numberOfXSectors = (int) Math.ceil(xBounds/agentMaxRange);
-        numberOfYSectors = (int) Math.ceil(yBounds/agentMaxRange);
+    void createSectors(){
+        //the grid works out how many sectors we need
+        double sectorSize = getSectorSize();
+        grid = new SpatialGrid(xBounds, yBounds, sectorSize, torus);
+        if (config.verletSkin > 0){
+            //everyone within range plus the skin has to be at most one cell away
+            verletGrid = new SpatialGrid(xBounds, yBounds, sectorSize + config.verletSkin, torus);
+        }
+        numberOfXSectors = grid.numberOfXCells;
+        numberOfYSectors = grid.numberOfYCells;
 
         //instantiate the array of sectors
         sectors = new Sector[numberOfXSectors][numberOfYSectors];
 
         for (int x = 0; x < numberOfXSectors; x++) {
             for (int y = 0; y < numberOfYSectors; y++) {
-                sectors[x][y] = new Sector(x*agentMaxRange,(x+1)*agentMaxRange,y*agentMaxRange,(y+1)*agentMaxRange,
+                sectors[x][y] = new Sector(x*grid.cellWidth,(x+1)*grid.cellWidth,y*grid.cellHeight,(y+1)*grid.cellHeight,
                         x, y, Metrics);
             }
         }
     }
 
+    /**
+     * the smallest the sectors can be: the largest range of all the agents. Unless config.sectorsFromRanges they're
+     * never smaller than agentMaxRange, the size they always had, so the neighbors are searched in the same order.
+     * Sized from the ranges they aren't allowed to be so small that there would be more sectors than agents, which
+     * costs memory without saving any distance checks
+     */
+    double getSectorSize(){
+        double largestRange = 0;
+        for (Agent currentAgent : allAgents){
+            largestRange = Math.max(largestRange, currentAgent.range);
+        }
+        if (!config.sectorsFromRanges){
+            return Math.max(agentMaxRange, largestRange);
+        }
+        double smallestSize = Math.sqrt(xBounds*yBounds/Math.max(1, allAgents.size()));
+        return Math.max(largestRange, smallestSize > 0 ? smallestSize : agentMaxRange);
+    }
+
     public boolean addAgent(double newAgentXCoord, double newAgentYCoord,
                          double newAgentRange, Position newAgentPosition){
         int maliciousAgentsLeft = numberOfMaliciousAgents - currentNumberOfMaliciousIdentities;
         int totalAgentsLeft = numberOfAgents - 1 - currentNumberOfIdentities;
 
         double probMalicious =  (double) maliciousAgentsLeft / (double) totalAgentsLeft;
-        boolean malicious = rand.nextDouble() <= probMalicious;
-
         int sceneID = currentNumberOfIdentities;
 
+        double maliciousDraw;
+        if (config.rngMode == RngMode.perPair){
+            maliciousDraw = Utility.randomStream(config.seed, Utility.SETUP_ROUND, sceneID, Utility.NO_NEIGHBOR).nextDouble();
+        } else {
+            maliciousDraw = rand.nextDouble();
+        }
+        boolean malicious = maliciousDraw <= probMalicious;
+
         if (malicious){
             /*
              * make S bad agents at the same location. functionally much easier than a unique
@@ -161,8 +241,7 @@ public class AgentHolder {
              */
             for(int i = 0; i < SybilIdentityCount; i++) {
                 Agent agentToAdd = new Malicious_Agent(currentNumberOfAgents, sceneID, newAgentXCoord, newAgentYCoord,
-                        newAgentRange, newAgentPosition, adversaryStrategy,
-                        Metrics, RSSI);
+                        newAgentRange, newAgentPosition, adversaryStrategy, this);
                 allAgents.add(agentToAdd);
                 allMaliciousAgents.add(agentToAdd);
                 currentNumberOfAgents++;
@@ -172,8 +251,7 @@ public class AgentHolder {
         } else {
             //make one benign agent
             Agent agentToAdd = new Agent(currentNumberOfAgents, sceneID, newAgentXCoord, newAgentYCoord,
-                    newAgentRange, newAgentPosition,
-                    Metrics, RSSI);
+                    newAgentRange, newAgentPosition, this);
             allAgents.add(agentToAdd);
             allBenignAgents.add(agentToAdd);
             currentNumberOfAgents++;
@@ -183,51 +261,33 @@ public class AgentHolder {
         return malicious;
     }
 
-    public void purgeAgentsFromSectors(){
-        for (int xSector = 0; xSector < sectors.length; xSector++){
-            for (int ySector = 0; ySector < sectors[xSector].length; ySector++){
-                sectors[xSector][ySector].purge();
-            }
-        }
-    }
-
     //just matches agents up with where they physically are into a sector that contains them
     //this is necesarry each round since the agents move around
     protected void fitAgentsIntoSectors(){
+        grid.build(getActiveAgents());
 
-        purgeAgentsFromSectors();
-
-        for (Agent currentAgent : getActiveAgents()){
-            //the sectors know their bounds and can verify that the agent does reside in it, but this way is faster
-            int xSector = (int) Math.floor(currentAgent.xCoordinate /agentMaxRange);
-            int ySector = (int) Math.floor(currentAgent.yCoordinate /agentMaxRange);
-            sectors[xSector][ySector].add(currentAgent);
-            currentAgent.putIntoSector(sectors[xSector][ySector]);
+        for (int i = 0; i < grid.size; i++){
+            int cell = grid.cellOfInput[i];
+            grid.inputAgents[i].putIntoSector(sectors[cell / grid.numberOfYCells][cell % grid.numberOfYCells]);
         }
     }
 
-    //used when gathering neighbors to get the sectors that are adjacent or cornering any given sector,
-    //works modularly since it is cleaner that way even though sometimes i over deliver
+    //used when gathering neighbors to get the sectors that are adjacent or cornering any given sector, including it.
+    //each is given once and the ones past the edges are left out, unless the field is a torus, see SpatialGrid.adjacentCells
     public Sector[] getAdjacentSectorsToSector(int xSectorIndex, int ySectorIndex){
-        Sector[] arrayOfNearbySectors = new Sector[9]; //because it's modular always return 9 sectors, including the one given
-
-        arrayOfNearbySectors[0] = sectors[xSectorIndex][ySectorIndex];
-        arrayOfNearbySectors[1] = sectors[(xSectorIndex-1+ numberOfXSectors)% numberOfXSectors][ySectorIndex];
-        arrayOfNearbySectors[2] = sectors[(xSectorIndex-1+ numberOfXSectors)% numberOfXSectors][(ySectorIndex+1)% numberOfYSectors];
-        arrayOfNearbySectors[3] = sectors[xSectorIndex][(ySectorIndex+1)% numberOfYSectors];
-        arrayOfNearbySectors[4] = sectors[(xSectorIndex+1)% numberOfXSectors][(ySectorIndex+1)% numberOfYSectors];
-        arrayOfNearbySectors[5] = sectors[(xSectorIndex+1)% numberOfXSectors][ySectorIndex];
-        arrayOfNearbySectors[6] = sectors[(xSectorIndex+1)% numberOfXSectors][(ySectorIndex-1+ numberOfYSectors)% numberOfYSectors];
-        arrayOfNearbySectors[7] = sectors[xSectorIndex][(ySectorIndex-1+ numberOfYSectors)% numberOfYSectors];
-        arrayOfNearbySectors[8] = sectors[(xSectorIndex-1+ numberOfXSectors)% numberOfXSectors][(ySectorIndex-1+ numberOfYSectors)% numberOfYSectors];
-
+        int[] cells = new int[9];
+        int numberOfCells = grid.adjacentCells(grid.cellIndex(xSectorIndex, ySectorIndex), cells);
+        Sector[] arrayOfNearbySectors = new Sector[numberOfCells];
+        for (int i = 0; i < numberOfCells; i++){
+            arrayOfNearbySectors[i] = sectors[cells[i] / numberOfYSectors][cells[i] % numberOfYSectors];
+        }
         return arrayOfNearbySectors;
     }
 
     //same as function above but can be used by an agent or in reference to an agent via the function signature
     public Sector[] getAdjacentSectorsToSector(Agent agentInQuestion){
-        int xSector = (int) Math.floor(agentInQuestion.xCoordinate /agentMaxRange);
-        int ySector = (int) Math.floor(agentInQuestion.yCoordinate /agentMaxRange);
+        int xSector = grid.xCellOf(agentInQuestion.xCoordinate);
+        int ySector = grid.yCellOf(agentInQuestion.yCoordinate);
         return getAdjacentSectorsToSector(xSector, ySector);
     }
 
@@ -236,7 +296,10 @@ public class AgentHolder {
     public ArrayList<Agent> getAgentsFromSectors(Sector[] sectorsToLookAt){
         ArrayList<Agent> agentsFromSectors = new ArrayList<Agent>();
         for (int i = 0; i < sectorsToLookAt.length; i++){
-            agentsFromSectors.addAll(sectorsToLookAt[i].agents);
+            int cell = grid.cellIndex(sectorsToLookAt[i].xSectorCoordinate, sectorsToLookAt[i].ySectorCoordinate);
+            for (int k = grid.cellStart[cell]; k < grid.cellStart[cell + 1]; k++){
+                agentsFromSectors.add(grid.agents[k]);
+            }
         }
         return agentsFromSectors;
     }
@@ -254,8 +317,14 @@ public class AgentHolder {
     }
 
     protected void findAgentNeighbors(boolean symmetric, long time){
-        if (distanceMeasure == DistanceMeasure.DATASET){
+        if (config.distanceMeasure == DistanceMeasure.DATASET){
             findAgentNeighborsByPrecompiledDistances(symmetric, time);
+        } else if (config.verletSkin > 0){
+            findAgentNeighborsByCandidates(symmetric);
+        } else if (symmetric && config.halfStencilNeighbors
+                && (!torus || (grid.numberOfXCells >= 3 && grid.numberOfYCells >= 3))){
+            //a torus narrower than three cells would pair some cells from both sides
+            findAgentNeighborsByHalfStencil();
         } else {
             findAgentNeighborsByLocality(symmetric);
         }
@@ -268,48 +337,247 @@ public class AgentHolder {
     //asymmetric vision. if it's off, that's allowed and one neighbor will see the other but not vice versa.
     //a third option could be added to make it so that the distance has to be less than the maximum vision but this violates
     //the assumption that all seen neighbors are within a range r
+    //the agents are visited in the order fitAgentsIntoSectors sorted them into the grid from, which is the active agents'
     protected void findAgentNeighborsByLocality(boolean symmetric){
-        for (Agent currentAgent : getActiveAgents()){
+        for (int i = 0; i < grid.size; i++){
             //iterate through all agents
             //sectorized aproach prevents us from needing another for all agents
-            Sector[] potentialSectors = getAdjacentSectorsToSector(currentAgent);
-            ArrayList<Agent> allPotentialNeighbors = getAgentsFromSectors(potentialSectors);
+            Agent currentAgent = grid.inputAgents[i];
+            double x = currentAgent.xCoordinate, y = currentAgent.yCoordinate, range = currentAgent.range;
+            int numberOfCells = grid.adjacentCells(grid.cellOfInput[i], nearbyCells);
+
+            for (int c = 0; c < numberOfCells; c++) {
+                int cell = nearbyCells[c];
+                for (int k = grid.cellStart[cell]; k < grid.cellStart[cell + 1]; k++) {
+                    Agent potentialNeighbor = grid.agents[k];
+                    //make sure we're not considering ourself a neighbor
+                    //although we need to know the distance to ourself = 0, this is implicit and should/can not be done
+                    //through RSSI or any other means, therefore we do it explicitly later
+                    if (potentialNeighbor.UID != currentAgent.UID) {
+
+                        double distanceBetween = grid.distanceBetween(x, y, grid.xs[k], grid.ys[k]);
+
+                        if (symmetric) {
+                            if ((distanceBetween < range) && (distanceBetween < grid.ranges[k])) {
+                                currentAgent.addNeighbor(potentialNeighbor);
+                                potentialNeighbor.addNeighbor(currentAgent);
+                            }
+                        } else {
+                            if (distanceBetween < range) {
+                                currentAgent.addNeighbor(potentialNeighbor);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * symmetric neighbor discovery that checks each pair of agents once. Every cell is checked against itself and the
+     * four forwardCells, which between them pair up every two adjacent cells exactly once. Cells past the edge of the
+     * field are skipped, since an agent there can't be in range, unless the field is a torus and they wrap around.
+     * The pairs go into neighborOffsets/neighborTargets and the neighbor lists are filled from those rows, so each pair
+     * is measured and added once and the lists never have to be checked for duplicates.
+     * The neighbors are the same as findAgentNeighborsByLocality's, but listed in a different order
+     */
+    private void findAgentNeighborsByHalfStencil(){
+        int pairs = 0;
+        for (int cell = 0; cell < grid.cellStart.length - 1; cell++){
+            int xCell = cell / grid.numberOfYCells;
+            int yCell = cell % grid.numberOfYCells;
+            int cellEnd = grid.cellStart[cell + 1];
+            for (int a = grid.cellStart[cell]; a < cellEnd; a++){
+                //the rest of its own cell
+                pairs = addPairsInRange(a, a + 1, cellEnd, pairs);
+                for (int[] forward : forwardCells){
+                    int xOther = xCell + forward[0];
+                    int yOther = yCell + forward[1];
+                    if (torus){
+                        xOther = (xOther + grid.numberOfXCells) % grid.numberOfXCells;
+                        yOther = (yOther + grid.numberOfYCells) % grid.numberOfYCells;
+                    }
+                    if (xOther < grid.numberOfXCells && yOther >= 0 && yOther < grid.numberOfYCells){
+                        int other = grid.cellIndex(xOther, yOther);
+                        pairs = addPairsInRange(a, grid.cellStart[other], grid.cellStart[other + 1], pairs);
+                    }
+                }
+            }
+        }
 
-            for (Agent potentialNeighbor : allPotentialNeighbors) {
-                //make sure we're not considering ourself a neighbor
-                //although we need to know the distance to ourself = 0, this is implicit and should/can not be done
-                //through RSSI or any other means, therefore we do it explicitly later
-                if (potentialNeighbor.UID != currentAgent.UID) {
+        //count each agent's neighbors, then place the pairs in both agents' rows
+        int numberOfAgents = grid.size;
+        if (neighborOffsets.length < numberOfAgents + 1){
+            neighborOffsets = new int[numberOfAgents + 1];
+            rowFill = new int[numberOfAgents];
+        }
+        Arrays.fill(neighborOffsets, 0, numberOfAgents + 1, 0);
+        for (int p = 0; p < pairs; p++){
+            neighborOffsets[pairFrom[p] + 1]++;
+            neighborOffsets[pairTo[p] + 1]++;
+        }
+        for (int i = 0; i < numberOfAgents; i++){
+            neighborOffsets[i + 1] += neighborOffsets[i];
+        }
+        if (neighborTargets.length < 2 * pairs){
+            neighborTargets = new int[2 * pairs];
+        }
+        System.arraycopy(neighborOffsets, 0, rowFill, 0, numberOfAgents);
+        for (int p = 0; p < pairs; p++){
+            neighborTargets[rowFill[pairFrom[p]]++] = pairTo[p];
+            neighborTargets[rowFill[pairTo[p]]++] = pairFrom[p];
+        }
 
-                    double distanceBetween = Utility.distanceBetween(currentAgent, potentialNeighbor);
+        for (int i = 0; i < numberOfAgents; i++){
+            ArrayList<Agent> neighbors = grid.inputAgents[i].listOfNeighbors;
+            neighbors.ensureCapacity(neighborOffsets[i + 1] - neighborOffsets[i]);
+            for (int t = neighborOffsets[i]; t < neighborOffsets[i + 1]; t++){
+                neighbors.add(grid.inputAgents[neighborTargets[t]]);
+            }
+        }
+    }
 
-                    if (symmetric) {
-                        if ((distanceBetween < currentAgent.range) && (distanceBetween < potentialNeighbor.range)) {
-                            currentAgent.addNeighbor(potentialNeighbor);
-                            potentialNeighbor.addNeighbor(currentAgent);
-                        }
-                    } else {
-                        if (distanceBetween < currentAgent.range) {
-                            currentAgent.addNeighbor(potentialNeighbor);
+    //records the pairs of the grid's a-th sorted agent with the sorted agents from up to to that are in both their ranges
+    private int addPairsInRange(int a, int from, int to, int pairs){
+        double x = grid.xs[a], y = grid.ys[a], range = grid.ranges[a];
+        for (int b = from; b < to; b++){
+            double distanceBetween = grid.distanceBetween(x, y, grid.xs[b], grid.ys[b]);
+            if ((distanceBetween < range) && (distanceBetween < grid.ranges[b])){
+                if (pairs == pairFrom.length){
+                    pairFrom = Arrays.copyOf(pairFrom, Math.max(16, 2 * pairs));
+                    pairTo = Arrays.copyOf(pairTo, pairFrom.length);
+                }
+                pairFrom[pairs] = grid.inputIndex[a];
+                pairTo[pairs] = grid.inputIndex[b];
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * incremental neighbor search with Verlet lists. The agents within range plus config.verletSkin of each agent are
+     * kept as its candidates, and each round only the candidates are checked. Until the two agents that moved furthest
+     * since the candidates were found have moved more than the skin between them, nobody outside an agent's candidates
+     * can have come into its range, so the neighbors are the same as a full search finds. Past that, or when agents
+     * come or go, the candidates are found again from the grid. Each agent only adds to its own list, so nothing has to
+     * be checked for duplicates. The neighbors are listed in the candidates' order, which differs from the full search's
+     */
+    private void findAgentNeighborsByCandidates(boolean symmetric){
+        if (candidatesAreStale()){
+            findCandidates();
+        }
+        for (int i = 0; i < grid.size; i++){
+            Agent currentAgent = grid.inputAgents[i];
+            double x = currentAgent.xCoordinate, y = currentAgent.yCoordinate, range = currentAgent.range;
+            ArrayList<Agent> neighbors = currentAgent.listOfNeighbors;
+            for (int t = candidateOffsets[i]; t < candidateOffsets[i + 1]; t++){
+                Agent candidate = grid.inputAgents[candidateTargets[t]];
+                double distanceBetween = grid.distanceBetween(x, y, candidate.xCoordinate, candidate.yCoordinate);
+                if ((distanceBetween < range) && (!symmetric || distanceBetween < candidate.range)){
+                    neighbors.add(candidate);
+                }
+            }
+        }
+    }
+
+    private boolean candidatesAreStale(){
+        if (numberOfCandidateRows != grid.size){
+            return true;
+        }
+        double furthest = 0, secondFurthest = 0;
+        for (int i = 0; i < grid.size; i++){
+            Agent currentAgent = grid.inputAgents[i];
+            if (currentAgent != candidatesFoundFor[i]){
+                return true;
+            }
+            double moved = grid.distanceBetween(xWhenFound[i], yWhenFound[i], currentAgent.xCoordinate, currentAgent.yCoordinate);
+            if (moved > furthest){
+                secondFurthest = furthest;
+                furthest = moved;
+            } else if (moved > secondFurthest){
+                secondFurthest = moved;
+            }
+        }
+        //two agents that were just outside each other's candidates could have closed the skin between them
+        return furthest + secondFurthest > config.verletSkin;
+    }
+
+    private void findCandidates(){
+        candidateRebuilds++;
+        int numberOfAgents = grid.size;
+        verletGrid.build(Arrays.asList(grid.inputAgents).subList(0, numberOfAgents));
+        if (candidatesFoundFor.length < numberOfAgents){
+            candidatesFoundFor = new Agent[numberOfAgents];
+            xWhenFound = new double[numberOfAgents];
+            yWhenFound = new double[numberOfAgents];
+        }
+        if (candidateOffsets.length < numberOfAgents + 1){
+            candidateOffsets = new int[numberOfAgents + 1];
+        }
+
+        int candidates = 0;
+        for (int i = 0; i < numberOfAgents; i++){
+            Agent currentAgent = grid.inputAgents[i];
+            double x = currentAgent.xCoordinate, y = currentAgent.yCoordinate;
+            double reach = currentAgent.range + config.verletSkin;
+            candidateOffsets[i] = candidates;
+            int numberOfCells = verletGrid.adjacentCells(verletGrid.cellOfInput[i], nearbyCells);
+            for (int c = 0; c < numberOfCells; c++){
+                int cell = nearbyCells[c];
+                for (int k = verletGrid.cellStart[cell]; k < verletGrid.cellStart[cell + 1]; k++){
+                    if (verletGrid.agents[k].UID != currentAgent.UID
+                            && verletGrid.distanceBetween(x, y, verletGrid.xs[k], verletGrid.ys[k]) < reach){
+                        if (candidates == candidateTargets.length){
+                            candidateTargets = Arrays.copyOf(candidateTargets, Math.max(16, 2 * candidates));
                         }
+                        candidateTargets[candidates++] = verletGrid.inputIndex[k];
                     }
                 }
             }
+            candidatesFoundFor[i] = currentAgent;
+            xWhenFound[i] = x;
+            yWhenFound[i] = y;
         }
+        candidateOffsets[numberOfAgents] = candidates;
+        numberOfCandidateRows = numberOfAgents;
     }
 
+    //instead of asking about every pair of active agents, only the pairs with a reading around this time are looked at.
+    //they're visited in the same (receiver, broadcaster) order as the all pairs loop so the neighbor lists come out the same
     private void findAgentNeighborsByPrecompiledDistances(boolean symmetric, long time){
-        for (Agent reciever : getActiveAgents()){
-            for (Agent broadcaster : getActiveAgents()){
-                boolean neigbhors = RSSI.checkIfAgentsAreNeighbors(time, reciever.UID, broadcaster.UID, symmetric);
-                if (!neigbhors) {
-                    continue;
-                }
+        ArrayList<Agent> activeAgents = getActiveAgents();
+        HashMap<Integer, Integer> activeIndexOfUID = new HashMap<>();
+        for (int i = 0; i < activeAgents.size(); i++){
+            activeIndexOfUID.put(activeAgents.get(i).UID, i);
+        }
 
-                reciever.addNeighbor(broadcaster);
-                if (symmetric){
-                    broadcaster.addNeighbor(reciever);
-                }
+        long[] observedPairs = RSSI.getPairsObservedAround(time);
+        long[] neighborPairs = new long[symmetric ? 2 * observedPairs.length : observedPairs.length];
+        int count = 0;
+        for (long pair : observedPairs){
+            Integer reciever = activeIndexOfUID.get(PrecompiledDistanceIndex.recieverOf(pair));
+            Integer broadcaster = activeIndexOfUID.get(PrecompiledDistanceIndex.broadcasterOf(pair));
+            if (reciever == null || broadcaster == null){
+                continue;
+            }
+            neighborPairs[count++] = PrecompiledDistanceIndex.pairKey(reciever, broadcaster);
+            //with symmetry a reading either way makes them neighbors, so the reverse pair passes the check too
+            if (symmetric){
+                neighborPairs[count++] = PrecompiledDistanceIndex.pairKey(broadcaster, reciever);
+            }
+        }
+        Arrays.sort(neighborPairs, 0, count);
+
+        for (int i = 0; i < count; i++){
+            if (i > 0 && neighborPairs[i] == neighborPairs[i-1]){
+                continue;
+            }
+            Agent reciever = activeAgents.get(PrecompiledDistanceIndex.recieverOf(neighborPairs[i]));
+            Agent broadcaster = activeAgents.get(PrecompiledDistanceIndex.broadcasterOf(neighborPairs[i]));
+            reciever.addNeighbor(broadcaster);
+            if (symmetric){
+                broadcaster.addNeighbor(reciever);
             }
         }
     }
@@ -334,12 +602,10 @@ public class AgentHolder {
         based on the RSSI value and the position of the agents' phones
          */
 
-        for (Agent currentAgent : getActiveBenignAgents()){
-            currentAgent.GetInitialDistanceGuessesToNeighbors();
-        }
-        for (Agent currentAgent : getActiveMaliciousAgents()){
-            currentAgent.GetInitialDistanceGuessesToNeighbors();
-        }
+        //measurements only run in parallel with per-pair random streams, the shared generator depends on visiting order
+        boolean independentDraws = config.rngMode == RngMode.perPair;
+        runPhase(getActiveBenignAgents(), Agent::GetInitialDistanceGuessesToNeighbors, independentDraws);
+        runPhase(getActiveMaliciousAgents(), Agent::GetInitialDistanceGuessesToNeighbors, independentDraws);
         //debug: check to see why some agents have null values in their neighbors
         for (Agent currentAgent : getActiveAgents()){
             if (currentAgent.initialDistanceGuesses.size() != currentAgent.listOfNeighbors.size()){
@@ -347,9 +613,7 @@ public class AgentHolder {
             }
         }
         if(averageOut) {
-            for (Agent currentAgent : getActiveAgents()) {
-                currentAgent.AverageOutMethod();
-            }
+            runPhase(getActiveAgents(), Agent::AverageOutMethod);
         }
 
         /**
@@ -358,33 +622,170 @@ public class AgentHolder {
          as well as mitigate noise from the RSSi measurements
         **/
         if (stressMajorization) {
-            for (Agent currentAgent : getActiveAgents()){
-                //TODO uncomment once timing issue is fixed
-                currentAgent.OneRoundStressMajorization();
-            }
+            //TODO uncomment once timing issue is fixed
+            runPhase(getActiveAgents(), Agent::OneRoundStressMajorization);
         }
 
         if (cliqueMDS) {
-            for (Agent currentAgent : getActiveAgents()){
-                currentAgent.CliqueMDS();
-            }
+            runPhase(getActiveAgents(), Agent::CliqueMDS);
         }
+        if (config.sweep == null) {
+            runWeightedPhases(weightedSprings, stressMajDropNeighbor, stressMajDropLink);
+        } else {
+            runWeightedPhasesPerConfig(weightedSprings, stressMajDropNeighbor, stressMajDropLink);
+        }
+    }
+
+    private void runWeightedPhases(boolean weightedSprings, boolean stressMajDropNeighbor, boolean stressMajDropLink){
         if (weightedSprings) {
-            for (Agent currentAgent : getActiveAgents()){
-                currentAgent.ORMDS_weighted();
-            }
+            runPhase(getActiveAgents(), Agent::ORMDS_weighted);
         }
         if (stressMajDropNeighbor) {
-            for (Agent currentAgent : getActiveAgents()){
-                currentAgent.ORMDS_weighted_dropOne();
-            }
+            runPhase(getActiveAgents(), Agent::ORMDS_weighted_dropOne);
         }
 
         if (stressMajDropLink) {
-            for (Agent currentAgent : getActiveAgents()){
-                currentAgent.ORMDS_weighted_dropLink();
+            runPhase(getActiveAgents(), Agent::ORMDS_weighted_dropLink);
+        }
+    }
+
+    /**
+     * runs the weighted phases once for every config of the sweep, on the same initial guesses.
+     * The weighted phases only read the initial guesses and write the final guesses, so each config draws with its own
+     * DrawingParams into its own final guesses and records to its own Metrics, and the configs run on the worker pool
+     * at the same time. Each config goes through the agents in order, so its records are the same as a run of it alone.
+     */
+    private void runWeightedPhasesPerConfig(boolean weightedSprings, boolean stressMajDropNeighbor, boolean stressMajDropLink){
+        //repair the guesses the graph drawings would re-run once up front, so it doesn't happen (and draw random numbers)
+        //in every config
+        repairNeighborhoods();
+        ArrayList<Agent> agents = getActiveAgents();
+        List<HyperparameterSweep.Config> sweepConfigs = config.sweep.getConfigs();
+        ArrayList<Callable<Void>> configTasks = new ArrayList<>(sweepConfigs.size());
+        for (int i = 0; i < sweepConfigs.size(); i++){
+            DrawingParams params = sweepConfigs.get(i).applyTo(config.drawingParams);
+            Metrics configMetrics = sweepMetrics[i];
+            configMetrics.setRoundNumber(Metrics.getCurrentRound());
+            configTasks.add(() -> {
+                IntDoubleMap finalGuesses = new IntDoubleMap();
+                if (weightedSprings) {
+                    for (Agent currentAgent : agents){
+                        currentAgent.ORMDS_weighted(params, configMetrics, finalGuesses);
+                    }
+                }
+                if (stressMajDropNeighbor) {
+                    for (Agent currentAgent : agents){
+                        currentAgent.ORMDS_weighted_dropOne(params, configMetrics, finalGuesses);
+                    }
+                }
+                if (stressMajDropLink) {
+                    for (Agent currentAgent : agents){
+                        currentAgent.ORMDS_weighted_dropLink(params, configMetrics, finalGuesses);
+                    }
+                }
+                return null;
+            });
+        }
+
+        //a neighborhood the repair couldn't fix would be re-measured during the drawings, so then they stay serial
+        if (config.workerThreads <= 1 || configTasks.size() < 2 || anyNeighborhoodNeedsRepair(agents)){
+            for (Callable<Void> configTask : configTasks){
+                try {
+                    configTask.call();
+                } catch (Exception e) {
+                    throw new RuntimeException("sweep config failed", e);
+                }
+            }
+            return;
+        }
+        for (Future<Void> configResult : getWorkerPool().invokeAll(configTasks)){
+            try {
+                configResult.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while waiting on sweep configs", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("sweep config failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return the records of the weighted phases of each config of the sweep, in the sweep's order. Null without a sweep
+     */
+    public Metrics[] getSweepMetrics(){
+        return sweepMetrics;
+    }
+
+    private void repairNeighborhoods(){
+        for (Agent currentAgent : getActiveAgents()){
+            if (currentAgent.neighborhoodNeedsRepair()){
+                for (Agent neighbor : currentAgent.listOfNeighbors){
+                    neighbor.GetInitialDistanceGuessesToNeighbors();
+                }
+            }
+        }
+    }
+
+    /**
+     * runs one per-agent phase of the round (averaging out or one of the graph drawings) over the given agents.
+     * during these phases an agent only reads its neighbors' initial guesses and writes its own final guesses, so
+     * with more than one worker thread the agents are solved in parallel. Each agent's records are buffered and
+     * appended in list order afterwards, which keeps the output identical to the serial path.
+     * @param agents the agents to run the phase for, in the order their records should appear
+     * @param phase the agent method to run
+     */
+    private void runPhase(ArrayList<Agent> agents, Consumer<Agent> phase){
+        runPhase(agents, phase, !anyNeighborhoodNeedsRepair(agents));
+    }
+
+    private void runPhase(ArrayList<Agent> agents, Consumer<Agent> phase, boolean parallelSafe){
+        if (config.workerThreads <= 1 || agents.size() < 2 || !parallelSafe){
+            for (Agent currentAgent : agents){
+                phase.accept(currentAgent);
+            }
+            return;
+        }
+
+        ArrayList<Callable<ArrayList<Record>>> agentTasks = new ArrayList<>(agents.size());
+        for (Agent currentAgent : agents){
+            agentTasks.add(() -> {
+                ArrayList<Record> agentRecords = new ArrayList<>();
+                Metrics.deferRecords(agentRecords);
+                try {
+                    phase.accept(currentAgent);
+                } finally {
+                    Metrics.stopDeferringRecords();
+                }
+                return agentRecords;
+            });
+        }
+
+        for (Future<ArrayList<Record>> agentResult : getWorkerPool().invokeAll(agentTasks)){
+            try {
+                Metrics.addDeferredRecords(agentResult.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while waiting on agent phase", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("agent phase failed", e.getCause());
+            }
+        }
+    }
+
+    //the graph drawings re-run their neighbors' initial guesses when they find empty or NaN guesses,
+    //which writes to other agents and draws random numbers, so those rounds have to stay serial to be reproducible
+    private boolean anyNeighborhoodNeedsRepair(ArrayList<Agent> agents){
+        for (Agent currentAgent : agents){
+            if (currentAgent.neighborhoodNeedsRepair()){
+                return true;
             }
         }
+        return false;
+    }
+
+    private ForkJoinPool getWorkerPool(){
+        return workerPools.computeIfAbsent(config.workerThreads, ForkJoinPool::new);
     }
 
     //removes all the agents from the simulation
@@ -396,8 +797,8 @@ public class AgentHolder {
             currentAgent.currentSector = null;
         }
 
-        //it is a necessity that the sectors do not contain old agents, so purging each sector is a must
-        purgeAgentsFromSectors();
+        //it is a necessity that the grid does not contain old agents, so emptying it is a must
+        grid.build(new ArrayList<Agent>());
 
         //at this point, the agent holder should be the only reference to all of the agents
         //and therefore we can just purge the list.
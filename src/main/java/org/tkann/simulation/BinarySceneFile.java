@@ -0,0 +1,178 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * an agent file converted to a binary layout and memory mapped, so loading a scene doesn't parse anything.
+ *
+ * layout (big endian):
+ *   header: int magic "CCTS", int version, double xBounds, double yBounds, double minutes, int agents, int rounds
+ *   initialize table, per agent: double range, double phone position ID, double 1 if the agent is in the initialize
+ *   section or 0 if not
+ *   per round, all the same size: double 1 if the round is in the file or 0 if not, double time (NaN for none),
+ *   then the x column and the y column of every agent, NaN where the agent isn't there
+ *
+ * coordinates are kept as doubles so a converted scene runs exactly like the text file it came from.
+ */
+public class BinarySceneFile extends SceneFile {
+
+    static final int MAGIC = 0x43435453; //"CCTS"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    private final DoubleBuffer roundData;
+    private final int numberOfAgents;
+
+    private BinarySceneFile(File sceneFile) throws IOException {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile file = new RandomAccessFile(sceneFile, "r"); FileChannel channel = file.getChannel()) {
+            //the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+            throw new IOException(sceneFile + " isn't a binary scene file");
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException(sceneFile + " has version " + mapped.getInt(4) + ", expected " + VERSION);
+        }
+        xBounds = mapped.getDouble(8);
+        yBounds = mapped.getDouble(16);
+        totalNumberOfMinutes = mapped.getDouble(24);
+        numberOfAgents = mapped.getInt(32);
+        int totalRounds = mapped.getInt(36);
+        largestAgent = numberOfAgents - 1;
+        largestRound = totalRounds - 1;
+
+        long expectedBytes = HEADER_BYTES + 8L * (3L * numberOfAgents + (long) totalRounds * roundLength(numberOfAgents));
+        if (mapped.capacity() < expectedBytes) {
+            throw new IOException(sceneFile + " is truncated");
+        }
+        DoubleBuffer data = mapped.slice(HEADER_BYTES, mapped.capacity() - HEADER_BYTES).asDoubleBuffer();
+        for (int agent = 0; agent < numberOfAgents; agent++) {
+            if (data.get(3 * agent + 2) != 0) {
+                agentProperties.put(agent, new Double[] {data.get(3 * agent), data.get(3 * agent + 1)});
+            }
+        }
+        roundData = data.slice(3 * numberOfAgents, totalRounds * roundLength(numberOfAgents));
+    }
+
+    //doubles per round
+    private static int roundLength(int numberOfAgents) {
+        return 2 + 2 * numberOfAgents;
+    }
+
+    /**
+     * a round read straight out of the mapped file
+     */
+    private static final class MappedRound extends SceneRound {
+        private final DoubleBuffer data;
+        private final int start, numberOfAgents;
+
+        MappedRound(DoubleBuffer data, int start, int numberOfAgents) {
+            this.data = data;
+            this.start = start;
+            this.numberOfAgents = numberOfAgents;
+            time = data.get(start + 1);
+        }
+
+        @Override
+        public double getX(int sceneID) {
+            return sceneID < numberOfAgents ? data.get(start + 2 + sceneID) : Double.NaN;
+        }
+
+        @Override
+        public double getY(int sceneID) {
+            return sceneID < numberOfAgents ? data.get(start + 2 + numberOfAgents + sceneID) : Double.NaN;
+        }
+    }
+
+    @Override
+    public SceneRound getRound(int roundNumber) {
+        if (roundNumber < 0 || roundNumber >= getTotalRounds()) {
+            return null;
+        }
+        int start = roundNumber * roundLength(numberOfAgents);
+        if (roundData.get(start) == 0) {
+            return null;
+        }
+        return new MappedRound(roundData, start, numberOfAgents);
+    }
+
+    public static boolean isBinary(File sceneFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(sceneFile, "r")) {
+            return file.length() >= HEADER_BYTES && file.readInt() == MAGIC;
+        }
+    }
+
+    public static SceneFile map(File sceneFile) throws IOException {
+        return new BinarySceneFile(sceneFile);
+    }
+
+    public static void write(SceneFile scene, File destination) throws IOException {
+        int numberOfAgents = scene.getNumberOfAgents();
+        int totalRounds = scene.getTotalRounds();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(destination), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(scene.getXBounds());
+            out.writeDouble(scene.getYBounds());
+            out.writeDouble(scene.getTotalNumberOfMinutes());
+            out.writeInt(numberOfAgents);
+            out.writeInt(totalRounds);
+
+            for (int agent = 0; agent < numberOfAgents; agent++) {
+                Double[] properties = scene.getAgentProperties(agent);
+                out.writeDouble(properties == null ? 0 : properties[0]);
+                out.writeDouble(properties == null ? 0 : properties[1]);
+                out.writeDouble(properties == null ? 0 : 1);
+            }
+
+            for (int roundNumber = 0; roundNumber < totalRounds; roundNumber++) {
+                SceneRound round = scene.getRound(roundNumber);
+                out.writeDouble(round == null ? 0 : 1);
+                out.writeDouble(round == null ? Double.NaN : round.getTime());
+                for (int agent = 0; agent < numberOfAgents; agent++) {
+                    out.writeDouble(round == null ? Double.NaN : round.getX(agent));
+                }
+                for (int agent = 0; agent < numberOfAgents; agent++) {
+                    out.writeDouble(round == null ? Double.NaN : round.getY(agent));
+                }
+            }
+        }
+    }
+
+    /**
+     * converts a text agent file into a binary scene, which can then be given as the setting instead
+     * usage: BinarySceneFile scene.txt scene.bin
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("usage: BinarySceneFile <agent file.txt> <scene.bin>");
+            return;
+        }
+        write(SceneFile.read(new File(args[0])), new File(args[1]));
+    }
+}
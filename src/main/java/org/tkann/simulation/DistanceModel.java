@@ -0,0 +1,180 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.random.RandomGenerator;
+
+/**
+ * the measurement model behind RSSI_collector: the inverse CDFs of the ML distance estimates and the RSSI reservoirs,
+ * indexed by range bucket (the index into ranges). It never changes once loaded, so one instance per data location is
+ * shared by every simulation in the process, including ones running at the same time. The random draws come from the
+ * generator the caller passes in, which is the only per-run state.
+ * @see RSSI_collector
+ */
+public final class DistanceModel {
+
+    static final int[] ranges = {3,4,5,6,8,10,12,15};//list of ranges that the BLE RSSI samples are taken from
+
+    //we use reservoir sampling to prevent having loaded in >100k samples during our sim and for quick reference
+    static final int reservoirSampleSize = 1000;
+
+    private static final HashMap<String, DistanceModel> loadedModels = new HashMap<>();
+
+    //[range bucket][quantile], null when there was no data location to read them from
+    private final double[][] inverseCDFs;
+
+    //the first axis of the array is based on what combination of phone positions the two requesting agents have
+    //the second axis is the nearest distance they're at
+    //the third axis is a list of samples for that range-position combo, and we take a random one for the RSSI
+    private final int[][][] RSSIValues;
+
+    //built the first time a run averages that many samples per ping, see RSSI_collector.usePingTable
+    private final ConcurrentHashMap<Integer, RSSIPingTable> pingTables = new ConcurrentHashMap<>();
+
+    private DistanceModel(double[][] inverseCDFs, int[][][] RSSIValues) {
+        this.inverseCDFs = inverseCDFs;
+        this.RSSIValues = RSSIValues;
+    }
+
+    /**
+     * the model for a data location, read the first time it's asked for
+     * @param dataLocation folder of the inverse CDFs, null for a model without them
+     */
+    public static DistanceModel load(String dataLocation) throws IOException {
+        synchronized (loadedModels) {
+            DistanceModel model = loadedModels.get(dataLocation);
+            if (model == null) {
+                double[][] inverseCDFs = dataLocation == null ? null : readInverseCDFs(dataLocation);
+                int[][][] RSSIValues = new int[Position.values().length*(Position.values().length+1)/2][ranges.length][reservoirSampleSize];
+//                fillPoolSamples(RSSIValues, dataLocation, new Random());  /* commented out for speed */
+                model = new DistanceModel(inverseCDFs, RSSIValues);
+                loadedModels.put(dataLocation, model);
+            }
+            return model;
+        }
+    }
+
+    private static double[][] readInverseCDFs(String dataLocation) throws IOException {
+        double[][] inverseCDFs = new double[ranges.length][];
+        for (int rangeIndex = 0; rangeIndex < ranges.length; rangeIndex++){
+            File CDFLocation = new File(dataLocation+ranges[rangeIndex]+"inverseCDF.csv");
+            Scanner SC = new Scanner(CDFLocation).useDelimiter("\n");
+            String[] ReadValues = SC.nextLine().split(",");
+            SC.close();
+            double[] numericValues = new double[ReadValues.length];
+            for (int i = 0; i < ReadValues.length; i++){
+                numericValues[i] = Double.parseDouble(ReadValues[i]);
+            }
+            inverseCDFs[rangeIndex] = numericValues;
+        }
+        return inverseCDFs;
+    }
+
+    //fill our array with reservoir sampled samples of RSSI data set from NIST set
+    private static void fillPoolSamples(int[][][] RSSIValues, String fileLocation, Random rand) throws IOException {
+        //Reservoir Sampling based on PureFerret's code at https://stackoverflow.com/questions/2218005/how-to-get-a-random-line-of-a-text-file-in-java
+
+        //iterate through the different position combinations
+        for (Position pos1 : Position.values()) { for (Position pos2 : Position.values()) {
+            //get the combination ID
+            int comboID = getPositionCombination(pos1,pos2);
+
+            for (int range=0; range<ranges.length;range++) {
+
+                //check to see if we have seen this combo before
+                if (RSSIValues[comboID][range][0]!=0) {
+                    //0 is not a value found in the RSSI samples, therefore we can be assured this is hit
+                    break;
+                }
+
+                String currentLine = null;
+                int count = 0;
+                int randomNumber = 0;
+                String filename = RangeAndPositionsToFileName(range,pos1,pos2);
+                Scanner SC = new Scanner(new File(fileLocation+filename)).useDelimiter("\n");
+
+                //do the reservoir sample to fill the given RSSI combination-range array
+                while (SC.hasNext()) {
+                    currentLine = SC.next();
+                    if (count<reservoirSampleSize) {
+                        RSSIValues[comboID][range][count] = Integer.parseInt(currentLine.replaceAll("[^-0-9]",""));
+                    } else if ((randomNumber = rand.nextInt(count)) < reservoirSampleSize){
+                        RSSIValues[comboID][range][randomNumber] = 	Integer.parseInt(currentLine.replaceAll("[^-0-9]",""));
+                    }
+                    count ++;
+                }
+                SC.close();
+            }
+        }}
+    }
+
+    /**
+     * an ML distance estimate for a pair in the range bucket, drawn from that bucket's inverse CDF
+     */
+    public double sampleDistance(int rangeIndex, RandomGenerator random) {
+        double[] inverseCDF = inverseCDFs[rangeIndex];
+        return inverseCDF[random.nextInt(inverseCDF.length)];
+    }
+
+    public int sampleRSSI(int positionCombination, int rangeIndex, RandomGenerator random) {
+        return RSSIValues[positionCombination][rangeIndex][random.nextInt(reservoirSampleSize)];
+    }
+
+    public int samplePing(int positionCombination, int rangeIndex, int numberOfSamples, RandomGenerator random) {
+        return pingTables.computeIfAbsent(numberOfSamples, n -> new RSSIPingTable(RSSIValues, n))
+                .samplePing(positionCombination, rangeIndex, random);
+    }
+
+    //determine the ID of a combination (like NchooseM) of phone positions. I.e. inPocket to inPocket is 1, inPocket to shirt is 2...
+    static int getPositionCombination(Position pos1, Position pos2) {
+        //input: 2 positions
+        //output: the combination ID of both inputs.
+        //Order does not matter, i.e. Hand,Purse is the same as Purse,Hand
+        if (pos1.ID <= pos2.ID) {
+            //you can derive this non-linear equation to enumerate the Nchoose2 for any two chosen positions
+            //assuming that pos1.ID is less than pos2.ID
+            return (Position.values().length * pos1.ID) + pos2.ID - ((pos1.ID*pos1.ID+pos1.ID)/2);
+        } else {
+            //if it's not ordered correctly, reorder them (recursively)
+            return getPositionCombination(pos2,pos1);
+        }
+    }
+
+    //given a two positions and a range, find the filename of the dataset for that set
+    static String RangeAndPositionsToFileName(int range, Position pos1, Position pos2) {
+        if (pos1.ID<=pos2.ID) {
+            return ranges[range]+"-"+pos1.name()+"-"+pos2.name()+".txt";
+        } else {
+            return ranges[range]+"-"+pos2.name()+"-"+pos1.name()+".txt";
+        }
+    }
+
+    //the index of the range bucket a true distance falls in, split halfway between the ranges
+    static int nearestDistIndex(double distance) {
+        for (int i = 0; i<ranges.length-1; i++){
+            if (distance <= ((double) (ranges[i]+ranges[i+1])/2)){
+                return i;
+            }
+        } // since ranges[i+1] is used, end at ranges.len-1 and then return the last one if it doesn't match any others
+        return ranges.length-1;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import GraphDrawer.DrawingParams;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * a set of SpringMass hyperparameter configs (the values DrawingParams.withWeights takes) evaluated in one simulation.
+ * The measurements, initial guesses and unweighted phases don't depend on these values, so the agent holder runs them
+ * once per round and then only the weighted phases once per config, with each config's records going to its own Metrics.
+ * The sweep itself never changes once built, so runs can share it.
+ */
+public class HyperparameterSweep {
+    //the parameters that can be swept, by their command line names
+    public static final String[] SWEPT_PARAMETERS = {"alpha", "weightBias", "weightDiscrepancy", "weightSeparation",
+            "weights", "delta", "threshStressMin", "threshStressMax"};
+
+    public static class Config {
+        private final LinkedHashMap<String, String> values;
+
+        Config(LinkedHashMap<String, String> values) {
+            this.values = values;
+        }
+
+        /**
+         * @return base with its hyperparameters replaced by this config's
+         */
+        public DrawingParams applyTo(DrawingParams base) {
+            return base.withWeights(Double.parseDouble(values.get("alpha")), Double.parseDouble(values.get("weightSeparation")),
+                    Double.parseDouble(values.get("weightDiscrepancy")), Double.parseDouble(values.get("weightBias")),
+                    Objects.equals(values.get("delta"), "relative"), Objects.equals(values.get("weights"), "fractional"),
+                    Double.parseDouble(values.get("threshStressMin")), Double.parseDouble(values.get("threshStressMax")));
+        }
+
+        /**
+         * @return the value of every swept parameter, by command line name
+         */
+        public LinkedHashMap<String, String> getValues() {
+            return values;
+        }
+    }
+
+    private final ArrayList<Config> configs;
+
+    private HyperparameterSweep(ArrayList<Config> configs) {
+        this.configs = configs;
+    }
+
+    public List<Config> getConfigs() {
+        return configs;
+    }
+
+    /**
+     * the sweep described by the command line. Each swept parameter is either a single value, values separated by colons
+     * ("1:2.66:4"), or for a random search of a numeric parameter a range "low..high" sampled uniformly.
+     * @param parameters the command line parameters
+     * @param mode grid for every combination of the values, random for samples configs drawn from them
+     * @param samples the number of configs of a random search
+     * @param seed seeds the random search
+     * @return the sweep, null if mode is empty
+     */
+    public static HyperparameterSweep fromParameters(HashMap<String, String> parameters, String mode, int samples, long seed) {
+        if (mode == null || mode.isEmpty()) {
+            return null;
+        }
+        ArrayList<Config> configs = new ArrayList<>();
+        if (mode.equalsIgnoreCase("grid")) {
+            buildGrid(parameters, 0, new LinkedHashMap<>(), configs);
+        } else if (mode.equalsIgnoreCase("random")) {
+            Random random = new Random(seed);
+            for (int i = 0; i < samples; i++) {
+                LinkedHashMap<String, String> values = new LinkedHashMap<>();
+                for (String parameter : SWEPT_PARAMETERS) {
+                    values.put(parameter, sample(parameters.get(parameter), random));
+                }
+                configs.add(new Config(values));
+            }
+        } else {
+            throw new IllegalArgumentException("sweep mode not recognized: " + mode);
+        }
+        return new HyperparameterSweep(configs);
+    }
+
+    private static void buildGrid(HashMap<String, String> parameters, int index,
+                                  LinkedHashMap<String, String> partial, ArrayList<Config> configs) {
+        if (index == SWEPT_PARAMETERS.length) {
+            configs.add(new Config(new LinkedHashMap<>(partial)));
+            return;
+        }
+        String parameter = SWEPT_PARAMETERS[index];
+        String spec = parameters.get(parameter);
+        if (spec.contains("..")) {
+            throw new IllegalArgumentException("ranges are only for random sweeps, list the values of " + parameter + " instead");
+        }
+        for (String value : spec.split(":")) {
+            partial.put(parameter, value);
+            buildGrid(parameters, index + 1, partial, configs);
+        }
+        partial.remove(parameter);
+    }
+
+    private static String sample(String spec, Random random) {
+        if (spec.contains("..")) {
+            String[] bounds = spec.split("\\.\\.");
+            double low = Double.parseDouble(bounds[0]);
+            double high = Double.parseDouble(bounds[1]);
+            return Double.toString(low + (high - low) * random.nextDouble());
+        }
+        String[] values = spec.split(":");
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -15,13 +15,15 @@
  **/
 package simulation;
 
-import java.util.HashMap;
+import GraphDrawer.DrawingParams;
+import GraphDrawer.IntDoubleMap;
+
 import java.util.Objects;
 
 public class Malicious_Agent extends Agent {
     static final double CUTOFF_FT = 6;
 
-    static double fudgeFactor = 0.1; //used for nDCF breaker strategy
+    static final double fudgeFactor = 0.1; //used for nDCF breaker strategy
 
     public enum strategy {
         underGuess,
@@ -38,13 +40,12 @@ public class Malicious_Agent extends Agent {
      * @param yCoord        starting y coordinate
      * @param range         maximum range at which the agent can see another agent
      * @param phonePosition the starting position that the agent's phone is held
-     * @param Metrics       static reference to the metric instance
-     * @param RSSI          static reference to the RSSI instance
+     * @param holder        the agent holder of the run, through which the agent reaches the run's settings, RSSI and Metrics
      */
     public Malicious_Agent(int UID, int sceneID, double xCoord, double yCoord, double range,
                            Position phonePosition, Malicious_Agent.strategy maliciousType,
-                           Metrics Metrics, RSSI_collector RSSI) {
-        super(UID, sceneID, xCoord, yCoord, range, phonePosition, Metrics, RSSI);
+                           AgentHolder holder) {
+        super(UID, sceneID, xCoord, yCoord, range, phonePosition, holder);
         this.maliciousType = maliciousType;
     }
 
@@ -105,8 +106,8 @@ public class Malicious_Agent extends Agent {
     }
 
     @Override
-    public void ORMDS_weighted() {
-        finalDistanceGuesses = (HashMap<Integer, Double>) initialDistanceGuesses.clone();
+    public void ORMDS_weighted(DrawingParams params, Metrics metrics, IntDoubleMap finalGuesses) {
+        finalGuesses.copyFrom(initialDistanceGuesses);
     }
 
 
@@ -15,6 +15,8 @@
  **/
 package simulation;
 
+import GraphDrawer.LayoutResult;
+
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -41,10 +43,31 @@ public class Metrics {
 
     private int totalNumberOfRounds;
 
+    //when agents run a phase in parallel, each worker thread collects its agent's records in its own buffer.
+    //the agent holder then appends the buffers in agent order so the records come out the same as a serial run
+    private final ThreadLocal<ArrayList<Record>> deferredRecords = new ThreadLocal<>();
+
+    //per round and part layout counts for the graph drawings, indexed by the LAYOUT_ constants below
+    private final TreeMap<Integer, EnumMap<PartOfRound, long[]>> layoutsByRound = new TreeMap<>();
+    private static final int LAYOUT_COLD = 0, LAYOUT_WARM = 1, LAYOUT_COLD_ITERATIONS = 2, LAYOUT_WARM_ITERATIONS = 3,
+            LAYOUT_UNWEIGHTED_ITERATIONS = 4, LAYOUT_WEIGHTED_ITERATIONS = 5;
+
+    //when streaming, every record also goes into a running accumulator for its round and part, so the summary
+    //statistics can be had without the records. If the records aren't retained they're dropped once accumulated
+    private final boolean streamRecords;
+    private final boolean retainRecords;
+    private final TreeMap<Integer, EnumMap<PartOfRound, RecordAccumulator>> accumulatorsByRound = new TreeMap<>();
+
     //constructor
     public Metrics(int currentRound, int totalNumberOfRounds){
+        this(currentRound, totalNumberOfRounds, false, true);
+    }
+
+    public Metrics(int currentRound, int totalNumberOfRounds, boolean streamRecords, boolean retainRecords){
         setRoundNumber(currentRound);
         this.totalNumberOfRounds = totalNumberOfRounds;
+        this.streamRecords = streamRecords;
+        this.retainRecords = retainRecords;
 
         allRecords = new ArrayList<Record>();
     }
@@ -54,21 +77,176 @@ public class Metrics {
     }
 
     public boolean addRecord(Agent recordingAgent, Agent neighborAgent, double guessedDistance, PartOfRound part){
+        if (!retainRecords && deferredRecords.get() == null){
+            return accumulateWithoutRecord(recordingAgent, neighborAgent, guessedDistance, part, 0);
+        }
         Record newRecord = new Record(recordingAgent, neighborAgent, guessedDistance, currentRound, part, 0);
-        allRecords.add(newRecord);
+        storeRecord(newRecord);
         return newRecord.correctGuess;
     }
     public boolean addRecord(Agent recordingAgent, Agent neighborAgent, double guessedDistance, PartOfRound part, double stress){
+        if (!retainRecords && deferredRecords.get() == null){
+            return accumulateWithoutRecord(recordingAgent, neighborAgent, guessedDistance, part, stress);
+        }
         Record newRecord = new Record(recordingAgent, neighborAgent, guessedDistance, currentRound, part, stress);
-        allRecords.add(newRecord);
+        storeRecord(newRecord);
         return newRecord.correctGuess;
     }
 
+    private void storeRecord(Record newRecord){
+        ArrayList<Record> buffer = deferredRecords.get();
+        if (buffer != null){
+            buffer.add(newRecord);
+        } else {
+            if (streamRecords){
+                accumulatorFor(newRecord.roundItOccurredIn, newRecord.partOfRoundTheRecordOccurredIn).add(newRecord);
+            }
+            if (retainRecords){
+                allRecords.add(newRecord);
+            }
+        }
+    }
+
+    //the same as building the record and storing it, minus the record
+    private boolean accumulateWithoutRecord(Agent recordingAgent, Agent neighborAgent, double guessedDistance, PartOfRound part, double stress){
+        double trueDistance = Utility.distanceBetween(recordingAgent, neighborAgent);
+        if (streamRecords){
+            accumulatorFor(currentRound, part).add(trueDistance, guessedDistance, stress);
+        }
+        return Record.isCorrectGuess(guessedDistance, trueDistance);
+    }
+
+    private RecordAccumulator accumulatorFor(int round, PartOfRound part){
+        return accumulatorsByRound.computeIfAbsent(round, r -> new EnumMap<>(PartOfRound.class))
+                .computeIfAbsent(part, p -> new RecordAccumulator());
+    }
+
+    /**
+     * the running statistics of every record of one part of one round. Only filled when streamRecords is on.
+     * @return the accumulator, empty if there were no such records
+     */
+    public RecordAccumulator getAccumulator(PartOfRound part, int round){
+        EnumMap<PartOfRound, RecordAccumulator> parts = accumulatorsByRound.get(round);
+        if (parts == null || !parts.containsKey(part)){
+            return new RecordAccumulator();
+        }
+        return parts.get(part);
+    }
+
+    /**
+     * the running statistics of every record of one part, over all rounds. Only filled when streamRecords is on.
+     * @return a new accumulator with all the rounds merged into it
+     */
+    public RecordAccumulator getAccumulator(PartOfRound part){
+        RecordAccumulator total = new RecordAccumulator();
+        for (EnumMap<PartOfRound, RecordAccumulator> parts : accumulatorsByRound.values()){
+            RecordAccumulator ofRound = parts.get(part);
+            if (ofRound != null){
+                total.merge(ofRound);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * sends every record added on the calling thread into buffer instead of the shared list, until
+     * stopDeferringRecords() is called on the same thread
+     * @param buffer the list the records are collected in
+     */
+    public void deferRecords(ArrayList<Record> buffer){
+        deferredRecords.set(buffer);
+    }
+
+    public void stopDeferringRecords(){
+        deferredRecords.remove();
+    }
+
+    /**
+     * appends a buffer filled through deferRecords(). Must not be called while worker threads are still adding records.
+     */
+    public void addDeferredRecords(ArrayList<Record> buffer){
+        if (streamRecords){
+            for (Record deferred : buffer){
+                accumulatorFor(deferred.roundItOccurredIn, deferred.partOfRoundTheRecordOccurredIn).add(deferred);
+            }
+        }
+        if (retainRecords){
+            allRecords.addAll(buffer);
+        }
+    }
+
+    /**
+     * counts one graph drawing in the current round. Safe to call from the worker threads.
+     * @param part the part of the round the drawing was for
+     * @param layout the drawing, for whether it was warm started and how many majorization iterations it took
+     */
+    public synchronized void recordLayout(PartOfRound part, LayoutResult layout){
+        long[] counts = layoutsByRound.computeIfAbsent(currentRound, round -> new EnumMap<>(PartOfRound.class))
+                .computeIfAbsent(part, p -> new long[6]);
+        if (layout.warmStarted){
+            counts[LAYOUT_WARM]++;
+            counts[LAYOUT_WARM_ITERATIONS] += layout.totalIterations();
+        } else {
+            counts[LAYOUT_COLD]++;
+            counts[LAYOUT_COLD_ITERATIONS] += layout.totalIterations();
+        }
+        counts[LAYOUT_UNWEIGHTED_ITERATIONS] += layout.unweightedIterations;
+        counts[LAYOUT_WEIGHTED_ITERATIONS] += layout.weightedIterations;
+    }
+
+    /**
+     * writes one line per round and part with how many drawings were cold and warm started and the
+     * majorization iterations they took, split into the unweighted and weighted phases.
+     * iterationsSaved estimates the work warm starting saved: the warm layouts times how many fewer iterations
+     * a warm layout of that part took than a cold one on average, over the whole run.
+     * mdsSkipped is the number of MDS eigen decompositions that weren't needed.
+     */
+    public synchronized void writeLayoutStatisticsCSV(File fileTarget) throws IOException {
+        writeLayoutStatisticsCSV(fileTarget, null);
+    }
+
+    /**
+     * @param seed when not null, the lines are appended after a leading seed column instead of replacing the file,
+     *             so several runs can share it. The header is only written to an empty file
+     */
+    public synchronized void writeLayoutStatisticsCSV(File fileTarget, Long seed) throws IOException {
+        EnumMap<PartOfRound, Double> meanColdIterations = new EnumMap<>(PartOfRound.class);
+        for (PartOfRound part : PartOfRound.values()){
+            long cold = 0, coldIterations = 0;
+            for (EnumMap<PartOfRound, long[]> parts : layoutsByRound.values()){
+                long[] counts = parts.get(part);
+                if (counts != null){
+                    cold += counts[LAYOUT_COLD];
+                    coldIterations += counts[LAYOUT_COLD_ITERATIONS];
+                }
+            }
+            meanColdIterations.put(part, cold == 0 ? 0 : (double) coldIterations / cold);
+        }
+
+        boolean writeHeader = seed == null || fileTarget.length() == 0;
+        String seedColumn = seed == null ? "" : seed + ",";
+        BufferedWriter bw = new BufferedWriter(new FileWriter(fileTarget, seed != null));
+        if (writeHeader){
+            bw.write((seed == null ? "" : "seed,") + "round,part,coldLayouts,warmLayouts,coldIterations,warmIterations,unweightedIterations,weightedIterations,iterationsSaved,mdsSkipped\n");
+        }
+        for (Map.Entry<Integer, EnumMap<PartOfRound, long[]>> round : layoutsByRound.entrySet()){
+            for (Map.Entry<PartOfRound, long[]> entry : round.getValue().entrySet()){
+                long[] counts = entry.getValue();
+                double saved = counts[LAYOUT_WARM] * meanColdIterations.get(entry.getKey()) - counts[LAYOUT_WARM_ITERATIONS];
+                bw.write(seedColumn + String.format("%d,%s,%d,%d,%d,%d,%d,%d,%f,%d\n", round.getKey(), entry.getKey(),
+                        counts[LAYOUT_COLD], counts[LAYOUT_WARM], counts[LAYOUT_COLD_ITERATIONS], counts[LAYOUT_WARM_ITERATIONS],
+                        counts[LAYOUT_UNWEIGHTED_ITERATIONS], counts[LAYOUT_WEIGHTED_ITERATIONS], saved, counts[LAYOUT_WARM]));
+            }
+        }
+        bw.close();
+    }
+
     public void purgeAllRecords(){
         for (Record inspecting : allRecords){
             inspecting.sectorItOccurredIn = null;
         }
         allRecords.clear();
+        accumulatorsByRound.clear();
     }
     public ArrayList<Record> getAllRecords(){
         return (ArrayList<Record>) allRecords.clone();
@@ -369,6 +547,23 @@ public class Metrics {
         }
     }
 
+    /**
+     * same as appendCollectionToCSV, with a leading seed column so several runs can share the file.
+     * the header is only written to an empty file
+     */
+    public void appendCollectionToCSV(ArrayList<Record> inputList, File fileTarget, long seed) throws IOException {
+        boolean writeHeader = fileTarget.length() == 0;
+        BufferedWriter bw = new BufferedWriter(new FileWriter(fileTarget, true));
+        if (writeHeader){
+            bw.write("seed,round,part,recording,neighbor,X,Y,reference,guess\n");
+        }
+        String skeleton = "%d,%d,%s,%d,%d,%f,%f,%f,%f\n";
+        for (Record inspecting : inputList){
+            bw.write(String.format(skeleton, seed, inspecting.roundItOccurredIn, inspecting.partOfRoundTheRecordOccurredIn, inspecting.UIDofGuessingAgent, inspecting.UIDofNeighbor, inspecting.xCoordinate, inspecting.yCoordinate, inspecting.trueDistance, inspecting.guessedDistance));
+        }
+        bw.close();
+    }
+
     public void appendCollectionToCSV(ArrayList<Record> inputList, File fileTarget) throws IOException {
 
         if (!fileTarget.exists()){
@@ -395,15 +590,44 @@ public class Metrics {
     }
 
     public static double getQError(ArrayList<Record> inputList, double percentile){
-        sortCollection(inputList);
-        Record TargetRecord;
-        if (percentile <=0){
-            TargetRecord = inputList.get(0);
-        } else if (percentile >=1){
-            TargetRecord =inputList.get(inputList.size()-1);
-        } else {
-            TargetRecord = inputList.get((int) (inputList.size() * percentile));
+        return getQErrors(inputList, percentile)[0];
+    }
+
+    /**
+     * the absolute errors at several percentiles at once, from one sort of the errors.
+     * Each percentile picks the same record getQError always has: the smallest for 0 or less, the largest for 1 or
+     * more, and the one at index size*percentile of the sorted collection otherwise.
+     * @return the errors, in the order the percentiles were given
+     */
+    public static double[] getQErrors(ArrayList<Record> inputList, double... percentiles){
+        double[] absErrors = getAbsoluteErrors(inputList);
+        Arrays.sort(absErrors);
+        return getQuantilesOfSorted(absErrors, percentiles);
+    }
+
+    public static double[] getAbsoluteErrors(ArrayList<Record> inputList){
+        double[] absErrors = new double[inputList.size()];
+        for (int i = 0; i < absErrors.length; i++){
+            absErrors[i] = inputList.get(i).calculateGuessRawAbsoluteError();
+        }
+        return absErrors;
+    }
+
+    public static double[] getQuantilesOfSorted(double[] sortedValues, double... percentiles){
+        if (sortedValues.length == 0){
+            throw new IndexOutOfBoundsException("no values to take quantiles of");
+        }
+        double[] quantiles = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++){
+            double percentile = percentiles[i];
+            if (percentile <= 0){
+                quantiles[i] = sortedValues[0];
+            } else if (percentile >= 1){
+                quantiles[i] = sortedValues[sortedValues.length-1];
+            } else {
+                quantiles[i] = sortedValues[(int) (sortedValues.length * percentile)];
+            }
         }
-        return TargetRecord.calculateGuessRawAbsoluteError();
+        return quantiles;
     }
 }
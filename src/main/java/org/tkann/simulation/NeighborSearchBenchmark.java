@@ -0,0 +1,128 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * times the neighbor search on agent files: the sectors' old wrapped neighborhoods against the bounded ones, the
+ * half stencil, sectors sized from the ranges in the scene (sectorSize=maxRange), and the Verlet candidate lists
+ * (neighborLists=verlet). Each round of a scene is set up once and its neighbors found repetitions times per search.
+ * Usage: java -cp classpath simulation.NeighborSearchBenchmark repetitions scene1.txt scene2.txt ...
+ */
+public class NeighborSearchBenchmark {
+
+    private enum Search {wrapped, bounded, halfStencil, maxRange, verlet}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2){
+            System.out.println("usage: NeighborSearchBenchmark repetitions scene1.txt scene2.txt ...");
+            return;
+        }
+        int repetitions = Integer.parseInt(args[0]);
+
+        //once through everything so the timed runs are compiled
+        for (int i = 1; i < args.length; i++){
+            for (Search search : Search.values()){
+                time(new File(args[i]), search, 1);
+            }
+        }
+
+        System.out.println(String.format("%-28s %7s %7s %10s %14s", "scene", "agents", "cells", "search", "us per round"));
+        for (int i = 1; i < args.length; i++){
+            File scene = new File(args[i]);
+            long links = -1;
+            for (Search search : Search.values()){
+                long[] result = time(scene, search, repetitions);
+                System.out.println(String.format("%-28s %7d %7d %10s %14.2f", scene.getName(), result[1], result[2],
+                        search, result[0] / 1000.0));
+                if (links >= 0 && links != result[3]){
+                    System.out.println("  found " + result[3] + " neighbor links instead of " + links);
+                }
+                links = result[3];
+            }
+        }
+    }
+
+    /**
+     * @return the average nanoseconds per round, the number of agents and of cells, and the total neighbor links found
+     */
+    private static long[] time(File sceneFile, Search search, int repetitions) throws IOException {
+        SimulationConfig config = new SimulationConfig.Builder()
+                .scene(sceneFile.getPath(), 0, 0, 0)
+                .halfStencilNeighbors(search == Search.halfStencil)
+                .sectorsFromRanges(search == Search.maxRange)
+                .verletSkin(search == Search.verlet ? 4 : 0)
+                .build();
+        SceneBuilder sceneBuilder = new SceneBuilder(sceneFile, config, new Metrics(0, 0), new RSSI_collector(config));
+        AgentHolder holder = sceneBuilder.buildScene();
+
+        long nanoseconds = 0;
+        long links = 0;
+        int rounds = sceneBuilder.getTotalRounds();
+        for (int round = 0; round < rounds; round++){
+            sceneBuilder.setSceneToRound(round);
+            long start = System.nanoTime();
+            for (int r = 0; r < repetitions; r++){
+                holder.resetAgentsForRound();
+                holder.fitAgentsIntoSectors();
+                if (search == Search.wrapped){
+                    findNeighborsInWrappedSectors(holder, config.symmetric);
+                } else {
+                    holder.findAgentNeighbors(config.symmetric);
+                }
+            }
+            nanoseconds += System.nanoTime() - start;
+            for (Agent agent : holder.getActiveAgents()){
+                links += agent.listOfNeighbors.size();
+            }
+        }
+        int cells = holder.numberOfXSectors * holder.numberOfYSectors;
+        return new long[]{nanoseconds / ((long) rounds * repetitions), holder.allAgents.size(), cells, links};
+    }
+
+    /**
+     * AgentHolder.findAgentNeighborsByLocality as it was before the search stopped at the edges: every agent checks
+     * all 9 wrapped neighborhood cells, see SpatialGrid.wrappedAdjacentCells, so small scenes check some cells twice
+     */
+    private static void findNeighborsInWrappedSectors(AgentHolder holder, boolean symmetric){
+        SpatialGrid grid = holder.grid;
+        int[] nearbyCells = new int[9];
+        for (int i = 0; i < grid.size; i++){
+            Agent currentAgent = grid.inputAgents[i];
+            double x = currentAgent.xCoordinate, y = currentAgent.yCoordinate, range = currentAgent.range;
+            int numberOfCells = grid.wrappedAdjacentCells(grid.cellOfInput[i], nearbyCells);
+            for (int c = 0; c < numberOfCells; c++){
+                int cell = nearbyCells[c];
+                for (int k = grid.cellStart[cell]; k < grid.cellStart[cell + 1]; k++){
+                    Agent potentialNeighbor = grid.agents[k];
+                    if (potentialNeighbor.UID != currentAgent.UID){
+                        double distanceBetween = grid.distanceBetween(x, y, grid.xs[k], grid.ys[k]);
+                        if (symmetric){
+                            if ((distanceBetween < range) && (distanceBetween < grid.ranges[k])){
+                                currentAgent.addNeighbor(potentialNeighbor);
+                                potentialNeighbor.addNeighbor(currentAgent);
+                            }
+                        } else if (distanceBetween < range){
+                            currentAgent.addNeighbor(potentialNeighbor);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
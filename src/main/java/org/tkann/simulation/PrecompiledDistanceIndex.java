@@ -0,0 +1,375 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Scanner;
+
+/**
+ * the precompiled distance estimates for the DATASET distance measure, indexed for lookups.
+ * every (receiver, broadcaster) pair keeps its readings as a sorted run of times and values so the reading nearest
+ * to a time is a binary search, and all readings are also kept in time order so the pairs seen around a time can be
+ * listed without asking every pair of agents.
+ *
+ * the index is columns of primitives, either on the heap after reading a CSV, or memory mapped straight from a binary
+ * file written by writeBinary (see main). Loading the binary file doesn't read anything until a lookup touches it,
+ * and JVMs mapping the same file share its pages. The file is mapped as a single buffer, so it can be at most
+ * MAX_BINARY_BYTES (2 GB) long; writeBinary refuses to write a bigger one and mapBinary to map it.
+ */
+public class PrecompiledDistanceIndex {
+
+    static final int USUAL_TIME_TO_SEE = 30000;
+    //a reading counts for a time if it's at most this far from it
+    static final int roundedTimeThreshold = (int) (USUAL_TIME_TO_SEE * 1.5/2);
+
+    //binary layout: magic, version, pair count, reading count, then the columns in the order of the fields below
+    static final int MAGIC = 0x43435444; //"CCTD"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    //the most a single mapped buffer can hold
+    static final long MAX_BINARY_BYTES = Integer.MAX_VALUE;
+
+    //sorted pair keys, and where each pair's readings start (pairCount+1 entries)
+    private LongBuffer pairKeys;
+    private IntBuffer pairStarts;
+    //readings grouped by pair, sorted by time within a pair
+    private LongBuffer times;
+    private DoubleBuffer values;
+    //every reading in time order, with the pair it belongs to
+    private LongBuffer timeOrderedTimes;
+    private LongBuffer timeOrderedPairs;
+
+    public static long pairKey(int recieverID, int broadcasterID) {
+        return ((long) recieverID << 32) | (broadcasterID & 0xffffffffL);
+    }
+
+    public static int recieverOf(long pairKey) {
+        return (int) (pairKey >> 32);
+    }
+
+    public static int broadcasterOf(long pairKey) {
+        return (int) pairKey;
+    }
+
+    /**
+     * loads a binary file written by writeBinary, or otherwise a time,receiver,broadcaster,prediction CSV
+     */
+    protected void load(String precompiledDistancesLocation) throws IOException {
+        if (isBinary(precompiledDistancesLocation)) {
+            mapBinary(precompiledDistancesLocation);
+        } else {
+            loadPrecompiledDistanceCSV(precompiledDistancesLocation);
+        }
+    }
+
+    static boolean isBinary(String location) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(location, "r")) {
+            return file.length() >= HEADER_BYTES && file.readInt() == MAGIC;
+        }
+    }
+
+    protected void loadPrecompiledDistanceCSV(String precompiledDistancesLocation) throws IOException {
+        int count = 0;
+        long[] readTimes = new long[1024];
+        long[] readPairs = new long[1024];
+        double[] readDistances = new double[1024];
+
+        File precompiledDistancesFile = new File(precompiledDistancesLocation);
+        Scanner SC = new Scanner(precompiledDistancesFile).useDelimiter("\n");
+        while (SC.hasNext()){
+            String currentLine = SC.nextLine();
+            // header = time,receiver,broadcaster,prediction
+            if (currentLine.contains("time")){
+                continue;
+            }
+            String[] splitLine = currentLine.split(",");
+            if (count == readTimes.length){
+                readTimes = Arrays.copyOf(readTimes, count * 2);
+                readPairs = Arrays.copyOf(readPairs, count * 2);
+                readDistances = Arrays.copyOf(readDistances, count * 2);
+            }
+            readTimes[count] = Long.parseLong(splitLine[0]);
+            readPairs[count] = pairKey(Integer.parseInt(splitLine[1]), Integer.parseInt(splitLine[2]));
+            readDistances[count] = Double.parseDouble(splitLine[3]);
+            count++;
+        }
+        SC.close();
+        build(readTimes, readPairs, readDistances, count);
+    }
+
+    /**
+     * indexes count readings given in file order
+     */
+    void build(long[] readTimes, long[] readPairs, double[] readDistances, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        //both sorts are stable, so readings of a pair with the same time stay in file order
+        sortByKey(order, readTimes);
+        long[] orderedTimes = new long[count];
+        long[] orderedPairs = new long[count];
+        for (int i = 0; i < count; i++) {
+            orderedTimes[i] = readTimes[order[i]];
+            orderedPairs[i] = readPairs[order[i]];
+        }
+        sortByKey(order, readPairs);
+
+        long[] keys = new long[count];
+        int[] starts = new int[count + 1];
+        long[] pairTimes = new long[count];
+        double[] pairValues = new double[count];
+        int pairCount = 0, size = 0;
+        for (int i = 0; i < count; i++) {
+            int reading = order[i];
+            boolean newPair = pairCount == 0 || keys[pairCount - 1] != readPairs[reading];
+            if (newPair) {
+                keys[pairCount] = readPairs[reading];
+                starts[pairCount] = size;
+                pairCount++;
+            } else if (pairTimes[size - 1] == readTimes[reading]) {
+                //a repeated time keeps the last value in the file, like the old map did
+                pairValues[size - 1] = readDistances[reading];
+                continue;
+            }
+            pairTimes[size] = readTimes[reading];
+            pairValues[size] = readDistances[reading];
+            size++;
+        }
+        starts[pairCount] = size;
+
+        pairKeys = LongBuffer.wrap(Arrays.copyOf(keys, pairCount));
+        pairStarts = IntBuffer.wrap(Arrays.copyOf(starts, pairCount + 1));
+        times = LongBuffer.wrap(Arrays.copyOf(pairTimes, size));
+        values = DoubleBuffer.wrap(Arrays.copyOf(pairValues, size));
+        timeOrderedTimes = LongBuffer.wrap(orderedTimes);
+        timeOrderedPairs = LongBuffer.wrap(orderedPairs);
+    }
+
+    /**
+     * writes the index in the binary layout mapBinary reads
+     */
+    public void writeBinary(String destination) throws IOException {
+        long bytes = binaryBytes(pairKeys.limit(), times.limit(), timeOrderedTimes.limit());
+        if (bytes > MAX_BINARY_BYTES) {
+            throw new IOException("the binary file would be " + bytes + " bytes, more than the " + MAX_BINARY_BYTES
+                    + " that can be mapped");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(destination), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pairKeys.limit());
+            out.writeInt(timeOrderedTimes.limit());
+            for (int i = 0; i < pairKeys.limit(); i++) {
+                out.writeLong(pairKeys.get(i));
+            }
+            for (int i = 0; i < pairStarts.limit(); i++) {
+                out.writeInt(pairStarts.get(i));
+            }
+            //pad so the long columns that follow stay 8 byte aligned
+            if (pairStarts.limit() % 2 == 1) {
+                out.writeInt(0);
+            }
+            for (int i = 0; i < times.limit(); i++) {
+                out.writeLong(times.get(i));
+            }
+            for (int i = 0; i < values.limit(); i++) {
+                out.writeDouble(values.get(i));
+            }
+            for (int i = 0; i < timeOrderedTimes.limit(); i++) {
+                out.writeLong(timeOrderedTimes.get(i));
+            }
+            for (int i = 0; i < timeOrderedPairs.limit(); i++) {
+                out.writeLong(timeOrderedPairs.get(i));
+            }
+        }
+    }
+
+    //the length of a binary file with these many pairs, readings kept by pair, and readings in time order
+    static long binaryBytes(long pairCount, long pairReadings, long readingCount) {
+        long startsCount = pairCount + 1;
+        return HEADER_BYTES + pairCount * 8 + (startsCount + startsCount % 2) * 4 + pairReadings * 16 + readingCount * 16;
+    }
+
+    protected void mapBinary(String location) throws IOException {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile file = new RandomAccessFile(location, "r"); FileChannel channel = file.getChannel()) {
+            if (channel.size() > MAX_BINARY_BYTES) {
+                throw new IOException(location + " is " + channel.size() + " bytes, more than the " + MAX_BINARY_BYTES
+                        + " a precompiled distance binary file can be mapped with");
+            }
+            //the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IOException(location + " isn't a precompiled distance binary file");
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException(location + " has version " + mapped.getInt(4) + ", expected " + VERSION);
+        }
+        int pairCount = mapped.getInt(8);
+        int readingCount = mapped.getInt(12);
+        long startsCount = pairCount + 1L;
+
+        //positions are longs so a corrupt count can't wrap around past the checks in slice
+        long position = HEADER_BYTES;
+        pairKeys = slice(mapped, position, pairCount * 8L).asLongBuffer();
+        position += pairCount * 8L;
+        pairStarts = slice(mapped, position, startsCount * 4).asIntBuffer();
+        position += (startsCount + startsCount % 2) * 4;
+        long pairReadings = pairStarts.get(pairCount);
+        times = slice(mapped, position, pairReadings * 8).asLongBuffer();
+        position += pairReadings * 8;
+        values = slice(mapped, position, pairReadings * 8).asDoubleBuffer();
+        position += pairReadings * 8;
+        timeOrderedTimes = slice(mapped, position, readingCount * 8L).asLongBuffer();
+        position += readingCount * 8L;
+        timeOrderedPairs = slice(mapped, position, readingCount * 8L).asLongBuffer();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long position, long length) throws IOException {
+        if (length < 0 || position + length > buffer.capacity()) {
+            throw new IOException("precompiled distance binary file is truncated");
+        }
+        return buffer.slice((int) position, (int) length);
+    }
+
+    public boolean checkIfNeighbors(long time, int recieverID, int broadcasterID, boolean symmetric){
+        return !Double.isNaN(getPrecompiledDistanceEstimate(time, recieverID, broadcasterID, symmetric));
+    }
+
+    /**
+     * the reading of the pair nearest to time, if it's within roundedTimeThreshold. Otherwise the reverse pair's
+     * when symmetric, or NaN
+     */
+    protected double getPrecompiledDistanceEstimate(long time, int recieverID, int broadcasterID, boolean symmetric){
+        int pair = findPair(pairKey(recieverID, broadcasterID));
+        if (pair >= 0) {
+            int best = nearest(pairStarts.get(pair), pairStarts.get(pair + 1), time);
+            if (Math.abs(times.get(best) - time) <= roundedTimeThreshold) {
+                return values.get(best);
+            }
+        }
+        if (symmetric){
+            return getPrecompiledDistanceEstimate(time, broadcasterID, recieverID, false);
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * every ordered pair with a reading within roundedTimeThreshold of time, which are exactly the pairs
+     * checkIfNeighbors accepts without the symmetric fallback. A pair can be listed more than once.
+     */
+    public long[] getPairsObservedAround(long time) {
+        int first = firstAtOrAfter(timeOrderedTimes, 0, timeOrderedTimes.limit(), time - roundedTimeThreshold);
+        int last = firstAtOrAfter(timeOrderedTimes, first, timeOrderedTimes.limit(), time + roundedTimeThreshold + 1);
+        long[] pairs = new long[last - first];
+        timeOrderedPairs.get(first, pairs);
+        return pairs;
+    }
+
+    private int findPair(long key) {
+        int low = 0, high = pairKeys.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = pairKeys.get(middle);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    //index of the reading in [from, to) closest to time, the earlier one on ties
+    private int nearest(int from, int to, long time) {
+        int after = firstAtOrAfter(times, from, to, time);
+        if (after == from) {
+            return from;
+        }
+        if (after == to) {
+            return to - 1;
+        }
+        return (times.get(after) - time < time - times.get(after - 1)) ? after : after - 1;
+    }
+
+    private static int firstAtOrAfter(LongBuffer sorted, int from, int to, long time) {
+        int low = from, high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted.get(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    //stable merge sort of indices by their key
+    private static void sortByKey(int[] order, long[] keys) {
+        int[] buffer = new int[order.length];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int start = 0; start < order.length - width; start += 2 * width) {
+                int middle = start + width;
+                int end = Math.min(start + 2 * width, order.length);
+                if (keys[order[middle - 1]] <= keys[order[middle]]) {
+                    continue;
+                }
+                int left = start, right = middle, out = start;
+                while (left < middle && right < end) {
+                    buffer[out++] = (keys[order[right]] < keys[order[left]]) ? order[right++] : order[left++];
+                }
+                while (left < middle) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < end) {
+                    buffer[out++] = order[right++];
+                }
+                System.arraycopy(buffer, start, order, start, end - start);
+            }
+        }
+    }
+
+    /**
+     * converts a precompiled distance CSV into the binary file, which can then be given as PrecompiledDistances instead
+     * usage: PrecompiledDistanceIndex input.csv output.bin
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("usage: PrecompiledDistanceIndex <distances.csv> <distances.bin>");
+            return;
+        }
+        PrecompiledDistanceIndex index = new PrecompiledDistanceIndex();
+        index.loadPrecompiledDistanceCSV(args[0]);
+        index.writeBinary(args[1]);
+    }
+}
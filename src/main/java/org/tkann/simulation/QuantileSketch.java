@@ -0,0 +1,174 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * a small, mergeable sketch of a stream of non-negative values (the absolute errors of guesses) that answers
+ * quantiles to within a fixed relative accuracy without keeping the values.
+ *
+ * values are counted in logarithmic buckets: bucket i holds the values in (gamma^(i-1), gamma^i], where
+ * gamma = (1+a)/(1-a) for relative accuracy a, and reports them as the point in the bucket that is at most a off
+ * from any of them. Values too small to bucket are counted as zero. Two sketches with the same accuracy merge
+ * exactly, so per round sketches can be combined into per run ones.
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.005;
+    //anything at or below this is counted as a zero error
+    static final double MIN_INDEXABLE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private long[] counts = new long[0];
+    private int minIndex;
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (value <= MIN_INDEXABLE) {
+            zeroCount++;
+            return;
+        }
+        int index = (int) Math.ceil(Math.log(value) / logGamma);
+        ensureIndex(index);
+        counts[index - minIndex]++;
+    }
+
+    /**
+     * adds everything counted in other to this sketch
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("can only merge sketches with the same accuracy");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        zeroCount += other.zeroCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (other.counts.length > 0) {
+            ensureIndex(other.minIndex);
+            ensureIndex(other.minIndex + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.minIndex + i - minIndex] += other.counts[i];
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * the value at the same position Metrics.getQError picks from a sorted list: the smallest for percentile
+     * 0 or below, the largest for 1 or above and the one at index (int) (count * percentile) otherwise.
+     * The smallest and largest are exact, the rest are within the relative accuracy. NaN if nothing was added
+     */
+    public double quantile(double percentile) {
+        return quantiles(percentile)[0];
+    }
+
+    /**
+     * several quantiles in one walk over the buckets, returned in the order asked
+     */
+    public double[] quantiles(double... percentiles) {
+        double[] values = new double[percentiles.length];
+        if (count == 0) {
+            Arrays.fill(values, Double.NaN);
+            return values;
+        }
+        //answer the percentiles from smallest to largest so the buckets are only walked once
+        Integer[] order = new Integer[percentiles.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(percentiles[a], percentiles[b]));
+
+        int bucket = -1;
+        long seen = zeroCount;
+        for (int i : order) {
+            double percentile = percentiles[i];
+            if (percentile <= 0) {
+                values[i] = min;
+                continue;
+            }
+            if (percentile >= 1) {
+                values[i] = max;
+                continue;
+            }
+            long rank = (long) (count * percentile);
+            if (rank < zeroCount) {
+                values[i] = min;
+                continue;
+            }
+            while (seen <= rank && bucket + 1 < counts.length) {
+                bucket++;
+                seen += counts[bucket];
+            }
+            if (seen <= rank) {
+                values[i] = max;
+            } else {
+                double estimate = 2 * Math.pow(gamma, minIndex + bucket) / (gamma + 1);
+                //the estimate can't be outside of what was actually seen
+                values[i] = Math.max(min, Math.min(max, estimate));
+            }
+        }
+        return values;
+    }
+
+    private void ensureIndex(int index) {
+        if (counts.length == 0) {
+            counts = new long[16];
+            minIndex = index - 8;
+            return;
+        }
+        int maxIndex = minIndex + counts.length - 1;
+        if (index < minIndex) {
+            int grow = Math.max(minIndex - index, counts.length / 2);
+            long[] grown = new long[counts.length + grow];
+            System.arraycopy(counts, 0, grown, grow, counts.length);
+            counts = grown;
+            minIndex -= grow;
+        } else if (index > maxIndex) {
+            int grow = Math.max(index - maxIndex, counts.length / 2);
+            counts = Arrays.copyOf(counts, counts.length + grow);
+        }
+    }
+}
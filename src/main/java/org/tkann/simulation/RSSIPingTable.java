@@ -0,0 +1,163 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import org.apache.commons.math3.special.Erf;
+
+import java.util.ArrayDeque;
+import java.util.random.RandomGenerator;
+
+/**
+ * the distribution of an averaged ping, precomputed for every position combination and distance.
+ * A ping averages numberOfSamples draws (with replacement) from one reservoir of the DistanceModel RSSI samples and then
+ * truncates to an int. By the central limit theorem the sum of the draws is normal with numberOfSamples times the
+ * reservoir's mean and variance, so the truncated average takes each integer value with a probability we can work
+ * out once. Those go into an alias table, after which a ping is one uniform draw and one coin flip.
+ */
+public class RSSIPingTable {
+
+    //how many standard deviations of the sum either side of its mean we bother keeping, past this the mass is ~1e-15
+    private static final double TAIL_DEVIATIONS = 8;
+
+    final int numberOfSamples;
+    //[position combination][distance index]
+    private final AliasTable[][] tables;
+
+    public RSSIPingTable(int[][][] reservoirs, int numberOfSamples) {
+        this.numberOfSamples = numberOfSamples;
+        tables = new AliasTable[reservoirs.length][];
+        for (int combo = 0; combo < reservoirs.length; combo++) {
+            tables[combo] = new AliasTable[reservoirs[combo].length];
+            for (int dist = 0; dist < reservoirs[combo].length; dist++) {
+                tables[combo][dist] = averagedPingDistribution(reservoirs[combo][dist], numberOfSamples);
+            }
+        }
+    }
+
+    public int samplePing(int positionCombination, int distanceIndex, RandomGenerator random) {
+        return tables[positionCombination][distanceIndex].sample(random);
+    }
+
+    static AliasTable averagedPingDistribution(int[] reservoir, int numberOfSamples) {
+        double mean = 0;
+        for (int value : reservoir) {
+            mean += value;
+        }
+        mean /= reservoir.length;
+        double variance = 0;
+        for (int value : reservoir) {
+            variance += (value - mean) * (value - mean);
+        }
+        variance /= reservoir.length;
+
+        double sumMean = numberOfSamples * mean;
+        double sumDeviation = Math.sqrt(numberOfSamples * variance);
+        if (sumDeviation == 0) {
+            //every draw is the same value, so is the ping
+            return new AliasTable(truncatedAverage(Math.round(sumMean), numberOfSamples), new double[]{1});
+        }
+
+        int lowest = truncatedAverage((long) Math.floor(sumMean - TAIL_DEVIATIONS * sumDeviation), numberOfSamples);
+        int highest = truncatedAverage((long) Math.ceil(sumMean + TAIL_DEVIATIONS * sumDeviation), numberOfSamples);
+        double[] probabilities = new double[highest - lowest + 1];
+        for (int ping = lowest; ping <= highest; ping++) {
+            //integer division truncates toward zero, so each ping value covers this range of sums
+            long lowestSum, highestSum;
+            if (ping < 0) {
+                lowestSum = (long) numberOfSamples * (ping - 1) + 1;
+                highestSum = (long) numberOfSamples * ping;
+            } else if (ping > 0) {
+                lowestSum = (long) numberOfSamples * ping;
+                highestSum = (long) numberOfSamples * (ping + 1) - 1;
+            } else {
+                lowestSum = -numberOfSamples + 1;
+                highestSum = numberOfSamples - 1;
+            }
+            //continuity correction since the sum is an integer
+            probabilities[ping - lowest] = normalCDF(highestSum + 0.5, sumMean, sumDeviation)
+                    - normalCDF(lowestSum - 0.5, sumMean, sumDeviation);
+        }
+        return new AliasTable(lowest, probabilities);
+    }
+
+    //what (int) (sum / numberOfSamples) gives for an int sum
+    private static int truncatedAverage(long sum, int numberOfSamples) {
+        return (int) (sum / numberOfSamples);
+    }
+
+    private static double normalCDF(double x, double mean, double deviation) {
+        return 0.5 * Erf.erfc(-(x - mean) / (deviation * Math.sqrt(2)));
+    }
+
+    /**
+     * Vose's alias method over the integers offset, offset+1, ...
+     */
+    static final class AliasTable {
+        private final int offset;
+        private final double[] probability;
+        private final int[] alias;
+
+        AliasTable(int offset, double[] weights) {
+            this.offset = offset;
+            int n = weights.length;
+            probability = new double[n];
+            alias = new int[n];
+
+            double total = 0;
+            for (double weight : weights) {
+                total += weight;
+            }
+            double[] scaled = new double[n];
+            ArrayDeque<Integer> small = new ArrayDeque<>();
+            ArrayDeque<Integer> large = new ArrayDeque<>();
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / total;
+                if (scaled[i] < 1) {
+                    small.add(i);
+                } else {
+                    large.add(i);
+                }
+            }
+            while (!small.isEmpty() && !large.isEmpty()) {
+                int less = small.poll();
+                int more = large.poll();
+                probability[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] = scaled[more] + scaled[less] - 1;
+                if (scaled[more] < 1) {
+                    small.add(more);
+                } else {
+                    large.add(more);
+                }
+            }
+            //whatever is left is 1 up to rounding
+            while (!large.isEmpty()) {
+                probability[large.poll()] = 1;
+            }
+            while (!small.isEmpty()) {
+                probability[small.poll()] = 1;
+            }
+        }
+
+        int sample(RandomGenerator random) {
+            int column = random.nextInt(probability.length);
+            if (random.nextDouble() < probability[column]) {
+                return offset + column;
+            }
+            return offset + alias[column];
+        }
+    }
+}
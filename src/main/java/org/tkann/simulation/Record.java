@@ -56,9 +56,13 @@ public class Record implements Comparable<Record>{
         trueDistance = Utility.distanceBetween(recordingAgent, neighborAgent);
         this.guessedDistance = guessedDistance;
 
-        //this isn't the TC4TL metric that we're ultimately going for, but the CDC has decided that 6 feet is
-        //the magic number, so that's our target
-        correctGuess = (guessedDistance<=6) == (trueDistance<=6);
+        correctGuess = isCorrectGuess(guessedDistance, trueDistance);
+    }
+
+    //this isn't the TC4TL metric that we're ultimately going for, but the CDC has decided that 6 feet is
+    //the magic number, so that's our target
+    static boolean isCorrectGuess(double guessedDistance, double trueDistance){
+        return (guessedDistance<=6) == (trueDistance<=6);
     }
 
     public Record(Agent recordingAgent, Agent neighborAgent, double guessedDistance, int roundNumber, PartOfRound part, double averageStress){
@@ -0,0 +1,154 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+/**
+ * running statistics of a group of records, updated as each record arrives so the records themselves don't have
+ * to be kept. It answers the same questions as the collection statistics in Metrics (nDCF at 3/6/10 feet, error
+ * bias and deviation, stress and the error quantiles) and two accumulators can be merged, so the per round ones
+ * add up to the statistics of a whole run.
+ */
+public class RecordAccumulator {
+
+    public static final double[] CUTOFFS = {3, 6, 10};
+
+    long count;
+
+    //for each cutoff: true distance under the cutoff, and of those guessed over it (misses);
+    //true distance over the cutoff, and of those guessed under it (false alarms)
+    final long[] actualTooClose = new long[CUTOFFS.length];
+    final long[] missedTooClose = new long[CUTOFFS.length];
+    final long[] actualNotTooClose = new long[CUTOFFS.length];
+    final long[] missedNotTooClose = new long[CUTOFFS.length];
+
+    //mean and sum of squared deviations of the error (true - guessed) and its absolute value, Welford style
+    double meanError, squaredDeviationError;
+    double meanAbsError, squaredDeviationAbsError;
+
+    double totalStress;
+    final QuantileSketch absErrors = new QuantileSketch();
+
+    public void add(Record record) {
+        add(record.trueDistance, record.guessedDistance, record.averageStress);
+    }
+
+    public void add(double trueDistance, double guessedDistance, double averageStress) {
+        count++;
+        for (int i = 0; i < CUTOFFS.length; i++) {
+            double cutoff = CUTOFFS[i];
+            if (trueDistance < cutoff) {
+                actualTooClose[i]++;
+                if (guessedDistance > cutoff) {
+                    missedTooClose[i]++;
+                }
+            }
+            if (trueDistance > cutoff) {
+                actualNotTooClose[i]++;
+                if (guessedDistance < cutoff) {
+                    missedNotTooClose[i]++;
+                }
+            }
+        }
+
+        double error = trueDistance - guessedDistance;
+        double delta = error - meanError;
+        meanError += delta / count;
+        squaredDeviationError += delta * (error - meanError);
+
+        double absError = Math.abs(error);
+        double absDelta = absError - meanAbsError;
+        meanAbsError += absDelta / count;
+        squaredDeviationAbsError += absDelta * (absError - meanAbsError);
+
+        totalStress += averageStress;
+        absErrors.add(absError);
+    }
+
+    /**
+     * adds everything in other to this accumulator
+     */
+    public void merge(RecordAccumulator other) {
+        if (other.count == 0) {
+            return;
+        }
+        long combined = count + other.count;
+        for (int i = 0; i < CUTOFFS.length; i++) {
+            actualTooClose[i] += other.actualTooClose[i];
+            missedTooClose[i] += other.missedTooClose[i];
+            actualNotTooClose[i] += other.actualNotTooClose[i];
+            missedNotTooClose[i] += other.missedNotTooClose[i];
+        }
+
+        //combine the moments of the two groups
+        double delta = other.meanError - meanError;
+        squaredDeviationError += other.squaredDeviationError + delta * delta * count * other.count / combined;
+        meanError += delta * other.count / combined;
+        double absDelta = other.meanAbsError - meanAbsError;
+        squaredDeviationAbsError += other.squaredDeviationAbsError + absDelta * absDelta * count * other.count / combined;
+        meanAbsError += absDelta * other.count / combined;
+
+        totalStress += other.totalStress;
+        absErrors.merge(other.absErrors);
+        count = combined;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getPMiss(int cutoffIndex) {
+        if (count == 0) {
+            return 0;
+        }
+        return ((double) missedTooClose[cutoffIndex]) / Math.max(1, (double) actualTooClose[cutoffIndex]);
+    }
+
+    public double getPFA(int cutoffIndex) {
+        if (count == 0) {
+            return 0;
+        }
+        return ((double) missedNotTooClose[cutoffIndex]) / Math.max(1, (double) actualNotTooClose[cutoffIndex]);
+    }
+
+    public double getNDCF(int cutoffIndex) {
+        //weights are 1 for both, as in Metrics.getNDCFOfCollection
+        return getPMiss(cutoffIndex) + getPFA(cutoffIndex);
+    }
+
+    public double getBias() {
+        return count == 0 ? 0 : meanError;
+    }
+
+    public double getAbsoluteBias() {
+        return count == 0 ? 0 : meanAbsError;
+    }
+
+    public double getSTD() {
+        return count == 0 ? 0 : Math.sqrt(squaredDeviationError / (count - 1));
+    }
+
+    public double getAbsSTD() {
+        return count == 0 ? 0 : Math.sqrt(squaredDeviationAbsError / (count - 1));
+    }
+
+    public double getAverageStress() {
+        return count == 0 ? 0 : totalStress / count;
+    }
+
+    public QuantileSketch getAbsErrorSketch() {
+        return absErrors;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+/**
+ * how the simulation hands out random numbers.
+ * shared draws everything from one java.util.Random per owner in the order agents are visited, which is how the
+ * original results were produced. perPair gives every (round, agent, neighbor) its own SplittableRandom derived from
+ * the seed, so the results don't depend on visiting order or on how many threads are used.
+ */
+public enum RngMode {
+    shared,
+    perPair;
+
+    public static RngMode getRngMode(String mode) {
+        switch (mode) {
+            case "perPair":
+                return perPair;
+            case "shared":
+            default:
+                return shared;
+        }
+    }
+}
@@ -16,13 +16,9 @@
 package simulation;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.regex.*;
+import java.io.IOException;
 
-public class SceneBuilder {
+public class SceneBuilder implements AutoCloseable {
     /*
     simulation.sceneBuilder is a class that is used for returning an agent holder class
      and is used also for updating that agent holder class
@@ -33,16 +29,17 @@ public class SceneBuilder {
      methods that need to be rand together.
      */
 
-    final int HEADER_INFORMATION_INDEX = -1;
-
     AgentHolder AgentHolder;
 
     //information about the file we are reading from, if we are even reading from it
     private boolean fromFile; //everything is parameterized to be random if we're not using a file
     private File sceneFile;
-    private Scanner SC;
 
-    private HashMap<Integer, HashMap<Integer, Double[]>> roundMappings;
+    private SceneFile scene;
+    //the last agent file read into memory, kept for the next run in the same JVM (see Main rngSeeds). It's never changed once read
+    private static SceneFile loadedScene;
+    private static String loadedScenePath;
+    private static boolean loadedSceneTokenized;
 
     //this might be used later if the simulation uses information about the RSSI such as "indoors" or "outdoors",
     //for now it's unused
@@ -57,136 +54,50 @@ public class SceneBuilder {
     //information for the agent holder and agents
     private double xBounds, yBounds;
     private int numberOfAgents,  numberOfCurrentMaliciousAgents;
-    public static int numberOfMaliciousAgents = 1; //todo should be in agent file but parameterizer needs to be updated first
-    public static int  maliciousIDCount = 1;//number of IDs each malicious agents get for sybil attacks
-    public static Malicious_Agent.strategy strategy = Malicious_Agent.strategy.underGuess;
-    public static boolean averageOut, stressMajorization, cliqueMDS, weightedSprings, stressMajDropNeighbor, stressMajDropLink;
-    public static boolean symmetricDefault = false;
-    public static void setParams(int numberOfMaliciousAgents, int maliciousIDCount, Malicious_Agent.strategy strategy,
-                                 boolean averageOut, boolean stressMajorization,
-                                 boolean cliqueMDS, boolean weightedSprings,
-                                 boolean stressMajDropNeighbor, boolean stressMajDropLink){
-        SceneBuilder.numberOfMaliciousAgents = numberOfMaliciousAgents;
-        SceneBuilder.maliciousIDCount = maliciousIDCount;
-        SceneBuilder.strategy = strategy;
-        SceneBuilder.averageOut = averageOut;
-        SceneBuilder.stressMajorization = stressMajorization;
-        SceneBuilder.cliqueMDS = cliqueMDS;
-        SceneBuilder.weightedSprings = weightedSprings;
-        SceneBuilder.stressMajDropNeighbor = stressMajDropNeighbor;
-        SceneBuilder.stressMajDropLink = stressMajDropLink;
-    }
+    //the run's settings: which algorithms run, malicious agents, symmetry and how the agent file is read
+    private final SimulationConfig config;
 
-    //static references to objects passed to the simulation.agent by the simulation.simulation to keep track of RSSIs and Metrics
-    static Metrics Metrics;
-    static RSSI_collector RSSI;
+    //references to objects passed to the simulation.agent by the simulation.simulation to keep track of RSSIs and Metrics
+    Metrics Metrics;
+    RSSI_collector RSSI;
 
     /**constructor if the simulation uses a file**/
-    public SceneBuilder(File sceneFile, Metrics Metrics, RSSI_collector RSSI) throws FileNotFoundException {
+    public SceneBuilder(File sceneFile, SimulationConfig config, Metrics Metrics, RSSI_collector RSSI) throws IOException {
         this.sceneFile = sceneFile;
         this.fromFile = true;
+        this.config = config;
 
-        SC = new Scanner(sceneFile).useDelimiter("\n");
-
-        String numberWithoutDecimal = "\\d+";
-        String numberWithOptionalDecimal = "\\d+\\.\\d*";
-
-        Pattern totalMinutesPattern = Pattern.compile("(" + numberWithOptionalDecimal + ")\\s+minutes");
-        Pattern totalAreaPattern = Pattern.compile("(" + numberWithOptionalDecimal + ")\\s+(" + numberWithOptionalDecimal + ")\\s+area");
-        Pattern settingPattern = Pattern.compile("(initialize|(round)\\s+(" + numberWithoutDecimal + ")):(\\s+time\\s+(" +  numberWithoutDecimal + "))?");
-        Pattern createAgentPattern = Pattern.compile("agent\\s+(" + numberWithoutDecimal + "):");
-        Pattern setRangePattern = Pattern.compile("(\\d+.\\d*)\\s+range");
-        Pattern setPositionPattern = Pattern.compile("(\\w+)\\s+phone");
-        Pattern updateAgentPattern = Pattern.compile("(" + numberWithoutDecimal + ")\\s+("
-                + numberWithOptionalDecimal + "|nan)\\s+(" + numberWithOptionalDecimal + "|nan)");
-
-
-        int initializingRound = HEADER_INFORMATION_INDEX;
-        int agent = 0;
-        int smallestAgent = 0;
-        int largestAgent = 0;
-        int largestRound = 0;
-
-        roundMappings = new HashMap<>();
-
-        //parser for agent file
-        while (SC.hasNext()){
-            String currentLine = SC.nextLine();
-
-            Matcher totalMinutesMatcher = totalMinutesPattern.matcher(currentLine);
-            Matcher totalAreaMatcher = totalAreaPattern.matcher(currentLine);
-            Matcher settingMatcher = settingPattern.matcher(currentLine);
-            Matcher createAgentMatcher = createAgentPattern.matcher(currentLine);
-            Matcher setRangeMatcher = setRangePattern.matcher(currentLine);
-            Matcher setPositionMatcher = setPositionPattern.matcher(currentLine);
-            Matcher updateAgentMatcher = updateAgentPattern.matcher(currentLine);
-
-            if (totalMinutesMatcher.find()) {
-                this.totalNumberOfMinutes = Integer.parseInt(totalMinutesMatcher.group(1));
-            } else if (totalAreaMatcher.find()){
-                this.xBounds = Double.parseDouble(totalAreaMatcher.group(1));
-                this.yBounds = Double.parseDouble(totalAreaMatcher.group(2));
-            } else if (settingMatcher.find()){
-                if (settingMatcher.group(0).contains("initialize")){
-                    initializingRound = HEADER_INFORMATION_INDEX;
-                    roundMappings.put(initializingRound,new HashMap<>());
-                } else {
-                    initializingRound = Integer.parseInt(settingMatcher.group(3));
-                    roundMappings.put(initializingRound,new HashMap<>());
-                    if (initializingRound > largestRound){
-                        largestRound = initializingRound;
-                    }
-
-                    double roundTime;
-                    if (settingMatcher.group(4)==null || settingMatcher.group(4).isEmpty()) {
-                        roundTime = Double.NaN;
-                    } else {
-                            roundTime = (double) Long.parseLong(settingMatcher.group(5));
-                    }
-                    roundMappings.get(initializingRound).put(HEADER_INFORMATION_INDEX, new Double[] {roundTime});
-                }
-            } else if (createAgentMatcher.find()){
-                agent = Integer.parseInt(createAgentMatcher.group(1));
-                if (agent > largestAgent){
-                    largestAgent = agent;
-                }
-                if (agent < smallestAgent){
-                    smallestAgent = agent;
-                }
-                Double[] agentProperties = {0.0,0.0};
-                roundMappings.get(initializingRound).put(agent,agentProperties);
-            } else if (setRangeMatcher.find()){
-                Double[] agentProperties = roundMappings.get(initializingRound).get(agent);
-                agentProperties[0] = Double.parseDouble(setRangeMatcher.group(1));
-                roundMappings.get(initializingRound).put(agent,agentProperties);
-            } else if (setPositionMatcher.find()){
-                Double[] agentProperties = roundMappings.get(initializingRound).get(agent);
-                Position position = Position.valueOf(setPositionMatcher.group(1));
-                agentProperties[1] = (double) position.ID;
-                roundMappings.get(initializingRound).put(agent,agentProperties);
-            } else if (updateAgentMatcher.find()){
-                agent = Integer.parseInt(updateAgentMatcher.group(1));
-                Double[] agentProperties;
-                try {
-                    agentProperties = new Double[] {Double.parseDouble(updateAgentMatcher.group(2)), Double.parseDouble(updateAgentMatcher.group(3))};
-                } catch (NumberFormatException e){
-                    agentProperties = new Double[] {Double.NaN, Double.NaN};
-                }
-                roundMappings.get(initializingRound).put(agent,agentProperties);
-            }
+        if (BinarySceneFile.isBinary(sceneFile)){
+            //already mapped and read lazily, so there's nothing to stream
+            scene = BinarySceneFile.map(sceneFile);
+        } else if (config.streamReadAhead > 0){
+            scene = new SceneStream(sceneFile, config.tokenizeSceneFile, config.streamReadAhead);
+        } else {
+            scene = readScene(sceneFile, config.tokenizeSceneFile);
         }
+        this.xBounds = scene.getXBounds();
+        this.yBounds = scene.getYBounds();
+        this.totalNumberOfMinutes = scene.getTotalNumberOfMinutes();
 
-        SC.close();
-
-        this.totalRounds = largestRound+1;
+        this.totalRounds = scene.getTotalRounds();
         Metrics.setTotalNumberOfRounds(this.totalRounds);
-        this.numberOfAgents = largestAgent+1;
+        this.numberOfAgents = scene.getNumberOfAgents();
         this.roundNumber = 0;
 
         this.Metrics = Metrics;
         this.RSSI = RSSI;
 
-        AgentHolder = new AgentHolder(numberOfAgents, numberOfMaliciousAgents, maliciousIDCount, strategy, this.xBounds, this.yBounds, Metrics, RSSI);
+        AgentHolder = new AgentHolder(numberOfAgents, this.xBounds, this.yBounds, config, Metrics, RSSI);
+    }
+
+    private static synchronized SceneFile readScene(File sceneFile, boolean tokenizeSceneFile) throws IOException {
+        String path = sceneFile.getAbsolutePath();
+        if (loadedScene == null || !path.equals(loadedScenePath) || loadedSceneTokenized != tokenizeSceneFile){
+            loadedScene = SceneFile.read(sceneFile, tokenizeSceneFile);
+            loadedScenePath = path;
+            loadedSceneTokenized = tokenizeSceneFile;
+        }
+        return loadedScene;
     }
 
     /**
@@ -223,8 +134,9 @@ public class SceneBuilder {
     }*/
 
     /**constructor for the use without a simulation file and to just randomly disperse the agents**/
-    public SceneBuilder(double bounds, int numberOfAgents, int numberOfRounds, Metrics Metrics, RSSI_collector RSSI){
+    public SceneBuilder(double bounds, int numberOfAgents, int numberOfRounds, SimulationConfig config, Metrics Metrics, RSSI_collector RSSI){
         fromFile = false;
+        this.config = config;
 
         this.xBounds = bounds;
         this.yBounds = bounds;
@@ -236,7 +148,7 @@ public class SceneBuilder {
         this.Metrics = Metrics;
         this.RSSI = RSSI;
 
-        AgentHolder = new AgentHolder(numberOfAgents, numberOfMaliciousAgents, maliciousIDCount,  strategy, bounds,  bounds, Metrics, RSSI);
+        AgentHolder = new AgentHolder(numberOfAgents, bounds, config, Metrics, RSSI);
     }
 
     //used to fill out the agentHolder once the sceneBuilder has been instantiated
@@ -247,15 +159,15 @@ public class SceneBuilder {
                 double newAgentXCoord = Math.random()*xBounds;
                 double newAgentYCoord = Math.random()*yBounds;
                 double newAgentRange = (Math.random() * .3 + 0.7) * AgentHolder.agentMaxRange;
-                Position newAgentPosition = RSSI.assignRandomPosition();
+                Position newAgentPosition = RSSI.assignRandomPosition(newAgentUID);
 
                 AgentHolder.addAgent(newAgentXCoord, newAgentYCoord,
                                     newAgentRange, newAgentPosition);
             }
         } else {
             for (int newAgentUID = 0; newAgentUID < numberOfAgents; newAgentUID++){
-                Double[] agentProperties = roundMappings.get(HEADER_INFORMATION_INDEX).get(newAgentUID);
-                Double[] agentPropertiesRound0 = roundMappings.get(0).get(newAgentUID);
+                Double[] agentProperties = scene.getAgentProperties(newAgentUID);
+                SceneFile.SceneRound round0 = scene.getRound(0);
 
                 double newAgentRange;
                 Position newAgentPosition;
@@ -263,26 +175,23 @@ public class SceneBuilder {
 
                 if (agentProperties == null){
                     newAgentRange = 0;
-                    newAgentPosition = RSSI.assignRandomPosition();
+                    newAgentPosition = RSSI.assignRandomPosition(newAgentUID);
                 } else {
                     newAgentRange = agentProperties[0];
                     int positionIndex = (int) Math.floor(agentProperties[1]);
                     newAgentPosition = Position.values()[positionIndex];
                 }
 
-                if (agentPropertiesRound0 == null){
-                    newAgentXCoord = Double.NaN;
-                    newAgentYCoord = Double.NaN;
-                } else {
-                    newAgentXCoord = agentPropertiesRound0[0];
-                    newAgentYCoord = agentPropertiesRound0[1];
-                }
+                newAgentXCoord = round0.getX(newAgentUID);
+                newAgentYCoord = round0.getY(newAgentUID);
 
                 AgentHolder.addAgent(newAgentXCoord, newAgentYCoord,
                         newAgentRange, newAgentPosition);
 
             }
         }
+        //the sectors are sized from the agents' ranges, so they're made last
+        AgentHolder.createSectors();
         return AgentHolder;
     }
 
@@ -296,7 +205,7 @@ public class SceneBuilder {
         updateAgentsLocations(roundNumber);
         AgentHolder.resetAgentsForRound();
         AgentHolder.fitAgentsIntoSectors();
-        AgentHolder.findAgentNeighbors(symmetricDefault);
+        AgentHolder.findAgentNeighbors(config.symmetric);
         this.roundNumber = roundNumber;
     }
 
@@ -319,12 +228,12 @@ public class SceneBuilder {
         updateAgentsLocations(roundNumber);
         AgentHolder.resetAgentsForRound();
         AgentHolder.fitAgentsIntoSectors();
-        AgentHolder.findAgentNeighbors(symmetricDefault, simulationTime);
+        AgentHolder.findAgentNeighbors(config.symmetric, simulationTime);
         //AgentHolder.randomlyDropNeighborsForAllAgents(0,true);
         AgentHolder.startRound(simulationTime,
-                averageOut, stressMajorization,
-                cliqueMDS, weightedSprings,
-                stressMajDropNeighbor, stressMajDropLink);
+                config.averageOut, config.stressMajorization,
+                config.cliqueMDS, config.weightedSprings,
+                config.stressMajDropNeighbor, config.stressMajDropLink);
 
         roundNumber++;
     }
@@ -339,24 +248,16 @@ public class SceneBuilder {
     }
 
     private void updateAgentsLocationsFromFile(int roundNumber){
-        Map<Integer, Double[]> mappingsForThisRound = roundMappings.get(roundNumber);
-
-        if (mappingsForThisRound.containsKey(HEADER_INFORMATION_INDEX)){
-            Double[] mappingHeader =  mappingsForThisRound.get(HEADER_INFORMATION_INDEX);
-            Double timeFromHeader = mappingHeader[0];
-            if (timeFromHeader!=null && !timeFromHeader.isNaN()){
-                simulationTime = timeFromHeader.longValue();
-                Agent.simulationTime = simulationTime;
-            }
+        SceneFile.SceneRound positionsForThisRound = scene.getRound(roundNumber);
+
+        double timeFromHeader = positionsForThisRound.getTime();
+        if (!Double.isNaN(timeFromHeader)){
+            simulationTime = (long) timeFromHeader;
+            AgentHolder.simulationTime = simulationTime;
         }
 
         for (Agent currentAgent : AgentHolder.allAgents){
-            Double[] agentProperties = mappingsForThisRound.get(currentAgent.sceneID);
-            if (agentProperties == null){
-                currentAgent.setCoordinates(Double.NaN,Double.NaN);
-            } else {
-                currentAgent.setCoordinates(agentProperties[0], agentProperties[1]);
-            }
+            currentAgent.setCoordinates(positionsForThisRound.getX(currentAgent.sceneID), positionsForThisRound.getY(currentAgent.sceneID));
         }
     }
 
@@ -366,14 +267,42 @@ public class SceneBuilder {
         }
         for (Agent currentAgent : AgentHolder.allAgents){
             double newXCoord = currentAgent.xCoordinate + ( 6 * (Math.random() - 0.5));
-            newXCoord = (newXCoord + xBounds) % xBounds;
             double newYCoord = currentAgent.yCoordinate + ( 6 * (Math.random() - 0.5));
-            newYCoord = (newYCoord + yBounds) % yBounds;
+            if (config.bounceOffEdges && !AgentHolder.torus){
+                //the field has walls, so bounce off them
+                newXCoord = reflectIntoBounds(newXCoord, xBounds);
+                newYCoord = reflectIntoBounds(newYCoord, yBounds);
+            } else {
+                //walking off one edge brings you back in on the other side, though off the torus nobody sees across it
+                newXCoord = (newXCoord + xBounds) % xBounds;
+                newYCoord = (newYCoord + yBounds) % yBounds;
+            }
             currentAgent.setCoordinates(newXCoord, newYCoord);
         }
     }
 
+    private static double reflectIntoBounds(double coordinate, double bounds){
+        if (coordinate < 0){
+            return -coordinate;
+        }
+        if (coordinate >= bounds){
+            //just under the edge, since the edge itself is past the last sector
+            return Math.min(2*bounds - coordinate, Math.nextDown(bounds));
+        }
+        return coordinate;
+    }
+
     public int getTotalRounds(){
         return totalRounds;
     }
+
+    /**
+     * stops reading the agent file if it's being streamed. Everything else is already in memory or mapped
+     */
+    @Override
+    public void close(){
+        if (scene instanceof SceneStream){
+            ((SceneStream) scene).close();
+        }
+    }
 }
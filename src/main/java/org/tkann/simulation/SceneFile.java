@@ -0,0 +1,409 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * an agent file read into memory (see agent_simulation_files/formatGuide.txt for the format).
+ * the initialize section keeps each agent's {range, phone position ID}, and every round keeps dense x and y arrays
+ * indexed by scene ID, NaN for agents that aren't in the round or whose coordinates are nan.
+ *
+ * the position lines and round headers, which are nearly all of a file, are tokenized by hand. Any other line goes
+ * through the regular expressions the SceneBuilder has always used, in the same order, so a file reads the same
+ * either way.
+ */
+public class SceneFile {
+
+    public static final int HEADER_INFORMATION_INDEX = -1;
+
+    private static final String numberWithoutDecimal = "\\d+";
+    private static final String numberWithOptionalDecimal = "\\d+\\.\\d*";
+
+    private static final Pattern totalMinutesPattern = Pattern.compile("(" + numberWithOptionalDecimal + ")\\s+minutes");
+    private static final Pattern totalAreaPattern = Pattern.compile("(" + numberWithOptionalDecimal + ")\\s+(" + numberWithOptionalDecimal + ")\\s+area");
+    private static final Pattern settingPattern = Pattern.compile("(initialize|(round)\\s+(" + numberWithoutDecimal + ")):(\\s+time\\s+(" +  numberWithoutDecimal + "))?");
+    private static final Pattern createAgentPattern = Pattern.compile("agent\\s+(" + numberWithoutDecimal + "):");
+    private static final Pattern setRangePattern = Pattern.compile("(\\d+.\\d*)\\s+range");
+    private static final Pattern setPositionPattern = Pattern.compile("(\\w+)\\s+phone");
+    private static final Pattern updateAgentPattern = Pattern.compile("(" + numberWithoutDecimal + ")\\s+("
+            + numberWithOptionalDecimal + "|nan)\\s+(" + numberWithOptionalDecimal + "|nan)");
+
+    /**
+     * the positions of every agent in one round
+     */
+    public static class SceneRound {
+        //NaN if the round header has no time
+        double time = Double.NaN;
+        double[] x = new double[0];
+        double[] y = new double[0];
+
+        public double getTime() {
+            return time;
+        }
+
+        public double getX(int sceneID) {
+            return sceneID < x.length ? x[sceneID] : Double.NaN;
+        }
+
+        public double getY(int sceneID) {
+            return sceneID < y.length ? y[sceneID] : Double.NaN;
+        }
+
+        void set(int sceneID, int property, double value) {
+            ensureCapacity(sceneID);
+            if (property == 0) {
+                x[sceneID] = value;
+            } else {
+                y[sceneID] = value;
+            }
+        }
+
+        void setPosition(int sceneID, double xCoordinate, double yCoordinate) {
+            ensureCapacity(sceneID);
+            x[sceneID] = xCoordinate;
+            y[sceneID] = yCoordinate;
+        }
+
+        private void ensureCapacity(int sceneID) {
+            if (sceneID >= x.length) {
+                int oldLength = x.length;
+                int newLength = Math.max(sceneID + 1, oldLength * 2);
+                x = Arrays.copyOf(x, newLength);
+                y = Arrays.copyOf(y, newLength);
+                Arrays.fill(x, oldLength, newLength, Double.NaN);
+                Arrays.fill(y, oldLength, newLength, Double.NaN);
+            }
+        }
+
+        void trim(int numberOfAgents) {
+            if (x.length != numberOfAgents) {
+                int oldLength = x.length;
+                x = Arrays.copyOf(x, numberOfAgents);
+                y = Arrays.copyOf(y, numberOfAgents);
+                if (numberOfAgents > oldLength) {
+                    Arrays.fill(x, oldLength, numberOfAgents, Double.NaN);
+                    Arrays.fill(y, oldLength, numberOfAgents, Double.NaN);
+                }
+            }
+        }
+    }
+
+    double totalNumberOfMinutes;
+    double xBounds, yBounds;
+    int largestAgent = 0;
+    int largestRound = 0;
+
+    //{range, phone position ID} of each agent from the initialize section
+    HashMap<Integer, Double[]> agentProperties = new HashMap<>();
+    private final ArrayList<SceneRound> rounds = new ArrayList<>();
+
+    //where the parser is
+    private int initializingRound = HEADER_INFORMATION_INDEX;
+    private SceneRound currentRound;
+    private int agent = 0;
+    //false only reads the initialize section and the size of the scene, handing each round to roundRead instead of keeping it
+    boolean keepRounds = true;
+
+    public static SceneFile read(File sceneFile) throws IOException {
+        return read(sceneFile, true);
+    }
+
+    /**
+     * @param tokenize false reads every line with the regular expressions, which is slower but otherwise the same
+     */
+    public static SceneFile read(File sceneFile, boolean tokenize) throws IOException {
+        SceneFile scene = new SceneFile();
+        scene.readFile(sceneFile, tokenize);
+        for (SceneRound round : scene.rounds) {
+            if (round != null) {
+                round.trim(scene.getNumberOfAgents());
+            }
+        }
+        return scene;
+    }
+
+    void readFile(File sceneFile, boolean tokenize) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(sceneFile), 1 << 16)) {
+            String currentLine;
+            while ((currentLine = reader.readLine()) != null) {
+                if (!tokenize || !readSimpleLine(currentLine)) {
+                    readLine(currentLine);
+                }
+            }
+        }
+        finishRound();
+    }
+
+    /**
+     * called with every round once all of its lines have been read, when the rounds aren't kept
+     */
+    protected void roundRead(int roundNumber, SceneRound round) throws IOException {
+    }
+
+    private void finishRound() throws IOException {
+        if (!keepRounds && currentRound != null) {
+            roundRead(initializingRound, currentRound);
+        }
+        currentRound = null;
+    }
+
+    public int getNumberOfAgents() {
+        return largestAgent + 1;
+    }
+
+    public int getTotalRounds() {
+        return largestRound + 1;
+    }
+
+    public double getXBounds() {
+        return xBounds;
+    }
+
+    public double getYBounds() {
+        return yBounds;
+    }
+
+    public double getTotalNumberOfMinutes() {
+        return totalNumberOfMinutes;
+    }
+
+    /**
+     * @return {range, phone position ID} from the initialize section, or null if the agent isn't in it
+     */
+    public Double[] getAgentProperties(int sceneID) {
+        return agentProperties.get(sceneID);
+    }
+
+    /**
+     * @return the round, or null if the file doesn't have it
+     */
+    public SceneRound getRound(int roundNumber) {
+        return roundNumber < rounds.size() ? rounds.get(roundNumber) : null;
+    }
+
+    /**
+     * reads "<id> <x> <y>" position lines and "round <n>:" headers (with or without a time) without regular expressions.
+     * these never match any pattern that's checked before the one they're meant for, so handling them here is the same
+     * as going through readLine.
+     * @return false if the line isn't one of those, untouched, for readLine to deal with
+     */
+    boolean readSimpleLine(String line) throws IOException {
+        int length = line.length();
+        int start = skipWhitespace(line, 0);
+        if (start == length) {
+            return false;
+        }
+        char first = line.charAt(start);
+        if (first >= '0' && first <= '9') {
+            int idEnd = skipDigits(line, start);
+            int xStart = skipWhitespace(line, idEnd);
+            if (xStart == idEnd) {
+                return false;
+            }
+            int xEnd = coordinateEnd(line, xStart);
+            if (xEnd < 0) {
+                return false;
+            }
+            int yStart = skipWhitespace(line, xEnd);
+            if (yStart == xEnd) {
+                return false;
+            }
+            int yEnd = coordinateEnd(line, yStart);
+            if (yEnd < 0 || skipWhitespace(line, yEnd) != length || idEnd - start > 9) {
+                return false;
+            }
+            agent = Integer.parseInt(line, start, idEnd, 10);
+            double x, y;
+            if (isNan(line, xStart) || isNan(line, yStart)) {
+                //Double.parseDouble doesn't take "nan", which made the regex version fall back to both NaN
+                x = Double.NaN;
+                y = Double.NaN;
+            } else {
+                x = Double.parseDouble(line.substring(xStart, xEnd));
+                y = Double.parseDouble(line.substring(yStart, yEnd));
+            }
+            setPosition(agent, x, y);
+            return true;
+        }
+        if (first == 'r' && line.startsWith("round", start)) {
+            int numberStart = skipWhitespace(line, start + 5);
+            int numberEnd = skipDigits(line, numberStart);
+            if (numberStart == start + 5 || numberEnd == numberStart || numberEnd - numberStart > 9
+                    || numberEnd == length || line.charAt(numberEnd) != ':') {
+                return false;
+            }
+            int roundNumber = Integer.parseInt(line, numberStart, numberEnd, 10);
+            int timeStart = skipWhitespace(line, numberEnd + 1);
+            double roundTime = Double.NaN;
+            if (timeStart != length) {
+                //only "round <n>: time <digits>[.<digits>]" after this
+                if (timeStart == numberEnd + 1 || !line.startsWith("time", timeStart)) {
+                    return false;
+                }
+                int digitsStart = skipWhitespace(line, timeStart + 4);
+                int digitsEnd = skipDigits(line, digitsStart);
+                if (digitsStart == timeStart + 4 || digitsEnd == digitsStart || digitsEnd - digitsStart > 18) {
+                    return false;
+                }
+                int end = digitsEnd;
+                if (end < length && line.charAt(end) == '.') {
+                    end = skipDigits(line, end + 1);
+                }
+                if (skipWhitespace(line, end) != length) {
+                    return false;
+                }
+                roundTime = (double) Long.parseLong(line, digitsStart, digitsEnd, 10);
+            }
+            startRound(roundNumber, roundTime);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * reads one line of the file with the regular expressions, the first that matches anywhere in the line wins
+     */
+    void readLine(String currentLine) throws IOException {
+        Matcher totalMinutesMatcher = totalMinutesPattern.matcher(currentLine);
+        Matcher totalAreaMatcher = totalAreaPattern.matcher(currentLine);
+        Matcher settingMatcher = settingPattern.matcher(currentLine);
+        Matcher createAgentMatcher = createAgentPattern.matcher(currentLine);
+        Matcher setRangeMatcher = setRangePattern.matcher(currentLine);
+        Matcher setPositionMatcher = setPositionPattern.matcher(currentLine);
+        Matcher updateAgentMatcher = updateAgentPattern.matcher(currentLine);
+
+        if (totalMinutesMatcher.find()) {
+            this.totalNumberOfMinutes = Integer.parseInt(totalMinutesMatcher.group(1));
+        } else if (totalAreaMatcher.find()){
+            this.xBounds = Double.parseDouble(totalAreaMatcher.group(1));
+            this.yBounds = Double.parseDouble(totalAreaMatcher.group(2));
+        } else if (settingMatcher.find()){
+            if (settingMatcher.group(0).contains("initialize")){
+                finishRound();
+                initializingRound = HEADER_INFORMATION_INDEX;
+                agentProperties = new HashMap<>();
+            } else {
+                double roundTime;
+                if (settingMatcher.group(4)==null || settingMatcher.group(4).isEmpty()) {
+                    roundTime = Double.NaN;
+                } else {
+                    roundTime = (double) Long.parseLong(settingMatcher.group(5));
+                }
+                startRound(Integer.parseInt(settingMatcher.group(3)), roundTime);
+            }
+        } else if (createAgentMatcher.find()){
+            agent = Integer.parseInt(createAgentMatcher.group(1));
+            if (agent > largestAgent){
+                largestAgent = agent;
+            }
+            setPosition(agent, 0.0, 0.0);
+        } else if (setRangeMatcher.find()){
+            setProperty(agent, 0, Double.parseDouble(setRangeMatcher.group(1)));
+        } else if (setPositionMatcher.find()){
+            Position position = Position.valueOf(setPositionMatcher.group(1));
+            setProperty(agent, 1, position.ID);
+        } else if (updateAgentMatcher.find()){
+            agent = Integer.parseInt(updateAgentMatcher.group(1));
+            double x, y;
+            try {
+                x = Double.parseDouble(updateAgentMatcher.group(2));
+                y = Double.parseDouble(updateAgentMatcher.group(3));
+            } catch (NumberFormatException e){
+                x = Double.NaN;
+                y = Double.NaN;
+            }
+            setPosition(agent, x, y);
+        }
+    }
+
+    private void startRound(int roundNumber, double roundTime) throws IOException {
+        finishRound();
+        initializingRound = roundNumber;
+        if (initializingRound > largestRound){
+            largestRound = initializingRound;
+        }
+        //a repeated round starts over, like it always has
+        currentRound = new SceneRound();
+        currentRound.time = roundTime;
+        if (keepRounds) {
+            while (rounds.size() <= roundNumber) {
+                rounds.add(null);
+            }
+            rounds.set(roundNumber, currentRound);
+        }
+    }
+
+    //in the initialize section the two values are {range, position}, in a round they're {x, y}
+    private void setPosition(int sceneID, double first, double second) {
+        if (initializingRound == HEADER_INFORMATION_INDEX) {
+            agentProperties.put(sceneID, new Double[] {first, second});
+        } else {
+            currentRound.setPosition(sceneID, first, second);
+        }
+    }
+
+    private void setProperty(int sceneID, int property, double value) {
+        if (initializingRound == HEADER_INFORMATION_INDEX) {
+            agentProperties.get(sceneID)[property] = value;
+        } else {
+            currentRound.set(sceneID, property, value);
+        }
+    }
+
+    //same as \s in the patterns
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int skipWhitespace(String line, int from) {
+        while (from < line.length() && isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int skipDigits(String line, int from) {
+        while (from < line.length() && line.charAt(from) >= '0' && line.charAt(from) <= '9') {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isNan(String line, int from) {
+        return line.startsWith("nan", from);
+    }
+
+    //end of a "<digits>.<digits>" or "nan" coordinate starting at from, or -1 if there isn't one
+    private static int coordinateEnd(String line, int from) {
+        if (isNan(line, from)) {
+            return from + 3;
+        }
+        int digitsEnd = skipDigits(line, from);
+        if (digitsEnd == from || digitsEnd == line.length() || line.charAt(digitsEnd) != '.') {
+            return -1;
+        }
+        return skipDigits(line, digitsEnd + 1);
+    }
+}
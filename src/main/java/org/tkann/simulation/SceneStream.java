@@ -0,0 +1,149 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * an agent file that's read a round at a time as the simulation asks for the rounds, instead of all at once.
+ * a first pass reads the initialize section and how many agents and rounds there are without keeping any positions,
+ * then a background thread reads the rounds a few ahead of the simulation. Only those few rounds and the current
+ * one are ever in memory, however long the scene is.
+ *
+ * the rounds have to be asked for in order and be in order in the file, which the format asks for anyway.
+ * A simulation that stops before the last round has to close the stream, or the reader stays blocked on the full
+ * read-ahead with the file open.
+ */
+public class SceneStream extends SceneFile implements AutoCloseable {
+
+    //a round that says the reader is done, and why if it failed
+    private static final class EndOfScene extends SceneRound {
+        final Exception failure;
+
+        EndOfScene(Exception failure) {
+            this.failure = failure;
+        }
+    }
+
+    private final File sceneFile;
+    private final BlockingQueue<SceneRound> readAhead;
+    private final Thread reader;
+
+    private int currentRoundNumber = -1;
+    private SceneRound current;
+    private boolean ended = false;
+
+    /**
+     * @param readAheadRounds how many rounds the background thread can get ahead of the simulation
+     */
+    public SceneStream(File sceneFile, boolean tokenize, int readAheadRounds) throws IOException {
+        this.sceneFile = sceneFile;
+        keepRounds = false;
+        readFile(sceneFile, tokenize);
+
+        readAhead = new ArrayBlockingQueue<>(Math.max(1, readAheadRounds));
+        int numberOfAgents = getNumberOfAgents();
+        reader = new Thread(() -> {
+            SceneFile rounds = new SceneFile() {
+                private int expectedRound = 0;
+
+                @Override
+                protected void roundRead(int roundNumber, SceneRound round) throws IOException {
+                    if (roundNumber != expectedRound) {
+                        throw new IOException(sceneFile + " has round " + roundNumber + " where round " + expectedRound
+                                + " should be, it can't be streamed");
+                    }
+                    expectedRound++;
+                    round.trim(numberOfAgents);
+                    try {
+                        readAhead.put(round);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("reading " + sceneFile + " was interrupted", e);
+                    }
+                }
+            };
+            rounds.keepRounds = false;
+            Exception failure = null;
+            try {
+                rounds.readFile(sceneFile, tokenize);
+            } catch (Exception e) {
+                failure = e;
+            }
+            try {
+                readAhead.put(new EndOfScene(failure));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "scene reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * @return the round, which has to be the current or the next one
+     */
+    @Override
+    public SceneRound getRound(int roundNumber) {
+        if (roundNumber == currentRoundNumber) {
+            return current;
+        }
+        if (roundNumber != currentRoundNumber + 1) {
+            throw new IllegalStateException("rounds of " + sceneFile + " are streamed in order, can't go from round "
+                    + currentRoundNumber + " to " + roundNumber);
+        }
+        if (ended) {
+            return null;
+        }
+        SceneRound next;
+        try {
+            next = readAhead.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for round " + roundNumber + " of " + sceneFile, e);
+        }
+        if (next instanceof EndOfScene) {
+            ended = true;
+            Exception failure = ((EndOfScene) next).failure;
+            if (failure != null) {
+                throw new IllegalStateException("couldn't read round " + roundNumber + " of " + sceneFile, failure);
+            }
+            return null;
+        }
+        currentRoundNumber = roundNumber;
+        current = next;
+        return current;
+    }
+
+    /**
+     * stops the reader and waits for it to close the file. Interrupting it makes its next put into readAhead fail,
+     * which ends the read. No more rounds are handed out after this
+     */
+    @Override
+    public void close() {
+        ended = true;
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        readAhead.clear();
+    }
+}
@@ -18,19 +18,18 @@ package simulation;
 import java.util.ArrayList;
 
 /**
-a class used for holding agents for our nearby neighbor search to run efficiently
+a cell of the field, which the records of the agents in it point to. The neighbor search itself runs on the flat
+SpatialGrid, which uses the same cells
  @author tkann@andrew.cmu.edu
  */
 
 public class Sector {
 
-    ArrayList<Agent> agents;
-
     /**it's usefull for the sector to know certain things about what the simulation thinks of it*/
     double xMin, xMax, yMin, yMax;
     int xSectorCoordinate, ySectorCoordinate;
 
-    static Metrics Metrics;
+    Metrics Metrics;
 
     /**
      * standard constructor for an individual sector
@@ -40,7 +39,7 @@ public class Sector {
      * @param yMax the lower y limit of the sector
      * @param xSectorCoordinate the x index of the sector in its holding 2d array
      * @param ySectorCoordinate the y index of the sector
-     * @param Metrics static reference to the metrics instance
+     * @param Metrics the metrics instance of the run
      */
     public Sector(double xMin, double xMax, double yMin, double yMax, int xSectorCoordinate, int ySectorCoordinate, Metrics Metrics){
         this.xMin = xMin;
@@ -51,21 +50,7 @@ public class Sector {
         this.xSectorCoordinate = xSectorCoordinate;
         this.ySectorCoordinate = ySectorCoordinate;
 
-        agents = new ArrayList<Agent>();
-
-        Sector.Metrics = Metrics;
-    }
-
-    public void add(Agent toAdd) {
-        agents.add(toAdd);
-    }
-
-    public void purge() {
-        agents.clear();
-    }
-
-    public int getNumberOfAgents(){
-        return agents.size();
+        this.Metrics = Metrics;
     }
 
     public double getAccuracyOfSector(){
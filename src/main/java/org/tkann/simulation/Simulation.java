@@ -18,7 +18,6 @@ package simulation;
 import Visuals.VisualInterface;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
@@ -51,17 +50,24 @@ public class Simulation {
     int numberOfRounds;
     int currentRound;
 
-    public static boolean visualsON;
+    //everything the run was set up with, see SimulationConfig
+    final SimulationConfig config;
+    boolean visualsON;
 
 
 
     /**
-     * the constructor for a simulation without the use of a file to dictate the locations
-     * @param numberOfAgents the total number of agents that are in the simulation
-     * @param bounds the x/y bounds of the field in which the agents reside
-     * @param numberOfRounds the total number of rounds that the simulation is to run for
+     * the constructor for a simulation. Without an agent file (settingFile "") the agents are put at random
+     * @param config the run's settings, including the number of agents, the x/y bounds of the field in which they
+     *               reside, the total number of rounds the simulation is to run for and the agent file
      */
-    public Simulation(int numberOfAgents, double bounds, int numberOfRounds, String settingFile) {
+    public Simulation(SimulationConfig config) {
+        this.config = config;
+        this.visualsON = config.visualsON;
+        int numberOfAgents = config.population;
+        double bounds = config.bounds;
+        int numberOfRounds = config.numberOfRounds;
+        String settingFile = config.settingFile;
         this.numberOfAgents = numberOfAgents;
         setBothBounds(bounds);
         this.numberOfRounds = numberOfRounds;
@@ -76,10 +82,10 @@ public class Simulation {
         /**
          * fixme there's a cyclic dependency issue here when a file is loaded and metrics doesn't know the proper max number of rounds
          */
-        Metrics = new Metrics(0, numberOfRounds);
+        Metrics = new Metrics(0, numberOfRounds, config.streamRecords, config.retainRecords);
 
         try {
-            RSSI = new RSSI_collector();
+            RSSI = new RSSI_collector(config);
         } catch (IOException e) {
             System.out.println("ERROR ON RSSI");
             e.printStackTrace();
@@ -94,7 +100,7 @@ public class Simulation {
         //String file = "gridTest.txt";
         settingFile = directory + settingFile;
 */
-        if (settingFile == "") {
+        if (settingFile.equals("")) {
             fromFileOrRandom = false;
         } else {
             fromFileOrRandom = true;
@@ -103,15 +109,20 @@ public class Simulation {
         if (fromFileOrRandom) {
             try {
                 File fromFile = new File(settingFile);
-                SceneBuilder = new SceneBuilder(fromFile, Metrics, RSSI);
-            } catch (FileNotFoundException e) {
+                SceneBuilder = new SceneBuilder(fromFile, config, Metrics, RSSI);
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         } else {
-            SceneBuilder = new SceneBuilder(bounds, numberOfAgents, numberOfRounds, Metrics, RSSI);
+            SceneBuilder = new SceneBuilder(bounds, numberOfAgents, numberOfRounds, config, Metrics, RSSI);
         }
 
-        allAgents = SceneBuilder.buildScene();
+        try {
+            allAgents = SceneBuilder.buildScene();
+        } catch (RuntimeException e) {
+            SceneBuilder.close();
+            throw e;
+        }
 
         if (visualsON) {
             visuals = new VisualInterface(xBounds, yBounds, allAgents, Metrics);
@@ -123,16 +134,21 @@ public class Simulation {
      * @throws InterruptedException
      */
     public void runSim() throws InterruptedException {
-        while (SceneBuilder.hasNextPosition()){
-
-            runSingleRoundOfSim();
-            //printRoundResults();
-            currentRound++;
-            Metrics.setRoundNumber(currentRound);
-            if (visualsON) {
-                visuals.repaintAll();
-                TimeUnit.MILLISECONDS.sleep(100);
+        try {
+            while (SceneBuilder.hasNextPosition()){
+
+                runSingleRoundOfSim();
+                //printRoundResults();
+                currentRound++;
+                Metrics.setRoundNumber(currentRound);
+                if (visualsON) {
+                    visuals.repaintAll();
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
             }
+        } finally {
+            //a streamed agent file is still being read if we stopped early
+            SceneBuilder.close();
         }
     }
 
@@ -217,4 +233,11 @@ public class Simulation {
         return Metrics.getAllRecords();
     }
 
+    /**
+     * @return the Metrics of each config of the run's hyperparameter sweep, in the sweep's order, or null without a sweep
+     */
+    public Metrics[] getSweepMetrics(){
+        return allAgents.getSweepMetrics();
+    }
+
 }
@@ -0,0 +1,271 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import GraphDrawer.DrawingParams;
+
+/**
+ * everything a simulation run is set up with. It's immutable and each Simulation keeps its own, so runs with
+ * different settings can share a JVM. Build one with the Builder; anything not set keeps the builder's default.
+ */
+public final class SimulationConfig {
+    //the agent file, or "" to place population agents at random in a bounds by bounds field for numberOfRounds rounds
+    public final String settingFile;
+    public final double bounds;
+    public final int numberOfRounds;
+    public final int population;
+
+    public final int numberOfMaliciousAgents;
+    public final int maliciousIDCount; //number of IDs each malicious agents get for sybil attacks
+    public final Malicious_Agent.strategy strategy;
+
+    //which algorithms run each round
+    public final boolean averageOut, stressMajorization, cliqueMDS, weightedSprings, stressMajDropNeighbor, stressMajDropLink;
+
+    public final boolean symmetric;
+    //symmetric neighbor discovery visits each pair of agents once instead of from both sides, see AgentHolder
+    public final boolean halfStencilNeighbors;
+    //random scenes only: the field wraps around, so agents walk off one edge onto the other and see each other across it
+    public final boolean torus;
+    //random scenes off the torus only: agents bounce off the edges of the field instead of coming back in on the other side
+    public final boolean bounceOffEdges;
+    //size the neighbor search's sectors from the largest range in the scene instead of at least AgentHolder.agentMaxRange
+    public final boolean sectorsFromRanges;
+    //how much further than their range agents keep candidate neighbors for the incremental search, 0 searches from
+    //scratch every round
+    public final double verletSkin;
+    public final DistanceMeasure distanceMeasure;
+    //folder of the inverse CDFs for the ML distance measure, null to not load them
+    public final String dataLocation;
+    public final String precompiledDistances;
+
+    public final long seed;
+    public final RngMode rngMode;
+    //number of threads the per-agent phases of a round are spread over, 1 keeps everything on the calling thread
+    public final int workerThreads;
+    public final boolean usePingTable;
+
+    public final boolean tokenizeSceneFile;
+    //rounds a background thread reads ahead of the simulation, 0 reads the whole agent file up front
+    public final int streamReadAhead;
+
+    public final boolean warmStart;
+    public final DrawingParams drawingParams;
+    //the weighted phases run once per config of the sweep when it isn't null
+    public final HyperparameterSweep sweep;
+
+    public final boolean visualsON;
+    public final boolean streamRecords;
+    public final boolean retainRecords;
+
+    private SimulationConfig(Builder builder) {
+        this.settingFile = builder.settingFile;
+        this.bounds = builder.bounds;
+        this.numberOfRounds = builder.numberOfRounds;
+        this.population = builder.population;
+        this.numberOfMaliciousAgents = builder.numberOfMaliciousAgents;
+        this.maliciousIDCount = builder.maliciousIDCount;
+        this.strategy = builder.strategy;
+        this.averageOut = builder.averageOut;
+        this.stressMajorization = builder.stressMajorization;
+        this.cliqueMDS = builder.cliqueMDS;
+        this.weightedSprings = builder.weightedSprings;
+        this.stressMajDropNeighbor = builder.stressMajDropNeighbor;
+        this.stressMajDropLink = builder.stressMajDropLink;
+        this.symmetric = builder.symmetric;
+        this.halfStencilNeighbors = builder.halfStencilNeighbors;
+        this.torus = builder.torus;
+        this.bounceOffEdges = builder.bounceOffEdges;
+        this.sectorsFromRanges = builder.sectorsFromRanges;
+        this.verletSkin = builder.verletSkin;
+        this.distanceMeasure = builder.distanceMeasure;
+        this.dataLocation = builder.dataLocation;
+        this.precompiledDistances = builder.precompiledDistances;
+        this.seed = builder.seed;
+        this.rngMode = builder.rngMode;
+        this.workerThreads = builder.workerThreads;
+        this.usePingTable = builder.usePingTable;
+        this.tokenizeSceneFile = builder.tokenizeSceneFile;
+        this.streamReadAhead = builder.streamReadAhead;
+        this.warmStart = builder.warmStart;
+        this.drawingParams = builder.drawingParams;
+        this.sweep = builder.sweep;
+        this.visualsON = builder.visualsON;
+        this.streamRecords = builder.streamRecords;
+        this.retainRecords = builder.retainRecords;
+    }
+
+    public static class Builder {
+        private String settingFile = "";
+        private double bounds = 500;
+        private int numberOfRounds = 20;
+        private int population = 1000;
+        private int numberOfMaliciousAgents = 0;
+        private int maliciousIDCount = 1;
+        private Malicious_Agent.strategy strategy = Malicious_Agent.strategy.underGuess;
+        private boolean averageOut, stressMajorization, cliqueMDS, stressMajDropNeighbor, stressMajDropLink;
+        private boolean weightedSprings = true;
+        private boolean symmetric = true;
+        private boolean halfStencilNeighbors = false;
+        private boolean torus = false;
+        private boolean bounceOffEdges = false;
+        private boolean sectorsFromRanges = false;
+        private double verletSkin = 0;
+        private DistanceMeasure distanceMeasure = DistanceMeasure.ML;
+        private String dataLocation = null;
+        private String precompiledDistances = null;
+        private long seed = 8008135;
+        private RngMode rngMode = RngMode.shared;
+        private int workerThreads = 1;
+        private boolean usePingTable = false;
+        private boolean tokenizeSceneFile = true;
+        private int streamReadAhead = 0;
+        private boolean warmStart = false;
+        private DrawingParams drawingParams = DrawingParams.DEFAULTS;
+        private HyperparameterSweep sweep = null;
+        private boolean visualsON = false;
+        private boolean streamRecords = false;
+        private boolean retainRecords = true;
+
+        public Builder scene(String settingFile, double bounds, int population, int numberOfRounds) {
+            this.settingFile = settingFile;
+            this.bounds = bounds;
+            this.population = population;
+            this.numberOfRounds = numberOfRounds;
+            return this;
+        }
+
+        public Builder malicious(int numberOfMaliciousAgents, int maliciousIDCount, Malicious_Agent.strategy strategy) {
+            this.numberOfMaliciousAgents = numberOfMaliciousAgents;
+            this.maliciousIDCount = maliciousIDCount;
+            this.strategy = strategy;
+            return this;
+        }
+
+        public Builder algorithms(boolean averageOut, boolean stressMajorization,
+                                  boolean cliqueMDS, boolean weightedSprings,
+                                  boolean stressMajDropNeighbor, boolean stressMajDropLink) {
+            this.averageOut = averageOut;
+            this.stressMajorization = stressMajorization;
+            this.cliqueMDS = cliqueMDS;
+            this.weightedSprings = weightedSprings;
+            this.stressMajDropNeighbor = stressMajDropNeighbor;
+            this.stressMajDropLink = stressMajDropLink;
+            return this;
+        }
+
+        public Builder symmetric(boolean symmetric) {
+            this.symmetric = symmetric;
+            return this;
+        }
+
+        public Builder halfStencilNeighbors(boolean halfStencilNeighbors) {
+            this.halfStencilNeighbors = halfStencilNeighbors;
+            return this;
+        }
+
+        public Builder torus(boolean torus) {
+            this.torus = torus;
+            return this;
+        }
+
+        public Builder bounceOffEdges(boolean bounceOffEdges) {
+            this.bounceOffEdges = bounceOffEdges;
+            return this;
+        }
+
+        public Builder sectorsFromRanges(boolean sectorsFromRanges) {
+            this.sectorsFromRanges = sectorsFromRanges;
+            return this;
+        }
+
+        public Builder verletSkin(double verletSkin) {
+            this.verletSkin = verletSkin;
+            return this;
+        }
+
+        public Builder distanceMeasure(DistanceMeasure distanceMeasure) {
+            this.distanceMeasure = distanceMeasure;
+            return this;
+        }
+
+        public Builder dataLocation(String dataLocation) {
+            this.dataLocation = dataLocation;
+            return this;
+        }
+
+        public Builder precompiledDistances(String precompiledDistances) {
+            this.precompiledDistances = precompiledDistances;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder rngMode(RngMode rngMode) {
+            this.rngMode = rngMode;
+            return this;
+        }
+
+        public Builder workerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public Builder usePingTable(boolean usePingTable) {
+            this.usePingTable = usePingTable;
+            return this;
+        }
+
+        public Builder sceneReading(boolean tokenizeSceneFile, int streamReadAhead) {
+            this.tokenizeSceneFile = tokenizeSceneFile;
+            this.streamReadAhead = streamReadAhead;
+            return this;
+        }
+
+        public Builder warmStart(boolean warmStart) {
+            this.warmStart = warmStart;
+            return this;
+        }
+
+        public Builder drawingParams(DrawingParams drawingParams) {
+            this.drawingParams = drawingParams;
+            return this;
+        }
+
+        public Builder sweep(HyperparameterSweep sweep) {
+            this.sweep = sweep;
+            return this;
+        }
+
+        public Builder visualsON(boolean visualsON) {
+            this.visualsON = visualsON;
+            return this;
+        }
+
+        public Builder records(boolean streamRecords, boolean retainRecords) {
+            this.streamRecords = streamRecords;
+            this.retainRecords = retainRecords;
+            return this;
+        }
+
+        public SimulationConfig build() {
+            return new SimulationConfig(this);
+        }
+    }
+}
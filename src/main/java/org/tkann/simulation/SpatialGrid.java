@@ -0,0 +1,203 @@
+/**
+ ** Copyright 2024 Trevor Kann, Lujo Bauer, Robert K. Cunningham
+ ** 
+ ** Licensed under the Apache License, Version 2.0 (the "License");
+ ** you may not use this file except in compliance with the License.
+ ** You may obtain a copy of the License at
+ ** 
+ **     http://www.apache.org/licenses/LICENSE-2.0
+ ** 
+ ** Unless required by applicable law or agreed to in writing, software
+ ** distributed under the License is distributed on an "AS IS" BASIS,
+ ** WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ ** See the License for the specific language governing permissions and
+ ** limitations under the License.
+ **/
+package simulation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * a uniform grid over the field, used to find the agents near each other without comparing every pair.
+ * It's rebuilt every round with a counting sort. The agents of cell c sit at positions cellStart[c] to cellStart[c+1]
+ * of the sorted arrays, which hold each agent with its coordinates and range side by side, so walking a cell reads
+ * contiguous memory. Within a cell the agents keep the order they were given in, the same order the sectors' lists had.
+ * The arrays are reused from round to round and nothing is allocated per query.
+ * Cell (x, y) has index x*numberOfYCells + y, the same layout as AgentHolder.sectors.
+ */
+final class SpatialGrid {
+
+    //the cells are at least cellSize on a side
+    final double cellWidth, cellHeight;
+    final int numberOfXCells, numberOfYCells;
+    final double xBounds, yBounds;
+    //whether the neighborhoods of the cells on one edge include the cells on the opposite edge
+    final boolean torus;
+
+    //the cells around a cell in the order the sectors' neighborhoods always visited them in: itself, left, up left, up,
+    //up right, right, down right, down, down left
+    private static final int[][] adjacentOffsets = {{0, 0}, {-1, 0}, {-1, 1}, {0, 1}, {1, 1}, {1, 0}, {1, -1}, {0, -1}, {-1, -1}};
+
+    //cellStart[c] is the position of cell c's first agent in the sorted arrays, cellStart[numberOfCells] the number of agents
+    final int[] cellStart;
+    //sorted by cell
+    Agent[] agents = new Agent[0];
+    double[] xs = new double[0];
+    double[] ys = new double[0];
+    double[] ranges = new double[0];
+
+    //where each sorted agent was in the order they were given
+    int[] inputIndex = new int[0];
+
+    //the agents in the order they were given, and the cell each of them is in
+    Agent[] inputAgents = new Agent[0];
+    int[] cellOfInput = new int[0];
+    int size;
+
+    /**
+     * @param cellSize the smallest the cells can be, the largest range anyone has so every neighbor is in an adjacent cell
+     * @param torus whether the field wraps around. The cells then tile the field exactly, so they're stretched to a whole
+     *              number per side, otherwise the last row and column go past the edge
+     */
+    SpatialGrid(double xBounds, double yBounds, double cellSize, boolean torus){
+        this.xBounds = xBounds;
+        this.yBounds = yBounds;
+        this.torus = torus;
+        if (torus){
+            this.numberOfXCells = Math.max(1, (int) Math.floor(xBounds/cellSize));
+            this.numberOfYCells = Math.max(1, (int) Math.floor(yBounds/cellSize));
+            this.cellWidth = xBounds/numberOfXCells;
+            this.cellHeight = yBounds/numberOfYCells;
+        } else {
+            this.numberOfXCells = Math.max(1, (int) Math.ceil(xBounds/cellSize));
+            this.numberOfYCells = Math.max(1, (int) Math.ceil(yBounds/cellSize));
+            this.cellWidth = cellSize;
+            this.cellHeight = cellSize;
+        }
+        this.cellStart = new int[numberOfXCells*numberOfYCells + 1];
+    }
+
+    /**
+     * sorts the agents into their cells
+     * @param toSort the agents, in the order queries should visit them in
+     */
+    void build(List<Agent> toSort){
+        size = toSort.size();
+        if (agents.length < size){
+            agents = new Agent[size];
+            xs = new double[size];
+            ys = new double[size];
+            ranges = new double[size];
+            inputIndex = new int[size];
+            inputAgents = new Agent[size];
+            cellOfInput = new int[size];
+        }
+
+        //count the agents of each cell, one over so the prefix sum leaves each cell's start
+        int numberOfCells = cellStart.length - 1;
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < size; i++){
+            Agent agent = toSort.get(i);
+            int cell = cellOf(agent.xCoordinate, agent.yCoordinate);
+            inputAgents[i] = agent;
+            cellOfInput[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int cell = 0; cell < numberOfCells; cell++){
+            cellStart[cell + 1] += cellStart[cell];
+        }
+
+        //place them, using cellStart[c] as cell c's insertion point. That leaves it at cell c's end, the next cell's start,
+        //so shift them back by one cell afterwards
+        for (int i = 0; i < size; i++){
+            int cell = cellOfInput[i];
+            int position = cellStart[cell]++;
+            Agent agent = inputAgents[i];
+            agents[position] = agent;
+            xs[position] = agent.xCoordinate;
+            ys[position] = agent.yCoordinate;
+            ranges[position] = agent.range;
+            inputIndex[position] = i;
+        }
+        for (int cell = numberOfCells; cell > 0; cell--){
+            cellStart[cell] = cellStart[cell - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    //agents outside the field go in the nearest cell on its edge. That keeps agents in range of each other in the same
+    //or adjacent cells, so they're still found
+    int xCellOf(double x){
+        return clamp((int) Math.floor(x/cellWidth), numberOfXCells);
+    }
+
+    int yCellOf(double y){
+        return clamp((int) Math.floor(y/cellHeight), numberOfYCells);
+    }
+
+    private static int clamp(int cell, int numberOfCells){
+        return Math.max(0, Math.min(cell, numberOfCells - 1));
+    }
+
+    int cellOf(double x, double y){
+        return cellIndex(xCellOf(x), yCellOf(y));
+    }
+
+    int cellIndex(int xCell, int yCell){
+        return xCell*numberOfYCells + yCell;
+    }
+
+    /**
+     * the cell and the distinct cells adjacent or cornering it, each once. Off the torus the cells past the edges are
+     * left out, since nobody there can be in range, while on the torus they wrap around to the opposite edge.
+     * A cell is listed where it first turns up when every offset in adjacentOffsets is wrapped, so on grids narrower
+     * than three cells, where a wrapped offset lands on a real neighbor, the order is still the one the sectors had
+     * @param into has room for the 9 cells
+     * @return the number of cells written
+     */
+    int adjacentCells(int cell, int[] into){
+        int x = cell / numberOfYCells;
+        int y = cell % numberOfYCells;
+        int count = 0;
+        for (int[] offset : adjacentOffsets){
+            int xOther = (x + offset[0] + numberOfXCells) % numberOfXCells;
+            int yOther = (y + offset[1] + numberOfYCells) % numberOfYCells;
+            if (!torus && (Math.abs(xOther - x) > 1 || Math.abs(yOther - y) > 1)){
+                continue;
+            }
+            int other = cellIndex(xOther, yOther);
+            boolean seen = false;
+            for (int i = 0; i < count && !seen; i++){
+                seen = into[i] == other;
+            }
+            if (!seen){
+                into[count++] = other;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * the neighborhoods the sectors used to have: all 9 offsets wrapped around the edges, even off the torus,
+     * so on small grids some cells come up more than once. Only NeighborSearchBenchmark uses it, to compare against
+     * @return the number of cells written, always 9
+     */
+    int wrappedAdjacentCells(int cell, int[] into){
+        int x = cell / numberOfYCells;
+        int y = cell % numberOfYCells;
+        for (int i = 0; i < adjacentOffsets.length; i++){
+            into[i] = cellIndex((x + adjacentOffsets[i][0] + numberOfXCells) % numberOfXCells,
+                    (y + adjacentOffsets[i][1] + numberOfYCells) % numberOfYCells);
+        }
+        return adjacentOffsets.length;
+    }
+
+    //how far apart two points are, across the edges on the torus
+    double distanceBetween(double x1, double y1, double x2, double y2){
+        if (torus){
+            return Utility.torusDistanceBetween(x1, y1, x2, y2, xBounds, yBounds);
+        }
+        return Utility.distanceBetween(x1, y1, x2, y2);
+    }
+}
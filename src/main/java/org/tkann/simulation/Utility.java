@@ -15,6 +15,8 @@
  **/
 package simulation;
 
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
 collection of static methods that can be used throughout the program (mainly by agents) that are better implementation-wise
@@ -24,6 +26,10 @@ or spatially in a different class.
 public class Utility {
 
     public static double distanceBetween(Agent agent1, Agent agent2){
+        if (agent1.holder.torus){
+            return torusDistanceBetween(agent1.xCoordinate, agent1.yCoordinate, agent2.xCoordinate, agent2.yCoordinate,
+                    agent1.holder.xBounds, agent1.holder.yBounds);
+        }
         return distanceBetween(agent1.xCoordinate, agent1.yCoordinate, agent2.xCoordinate, agent2.yCoordinate);
     }
 
@@ -31,7 +37,45 @@ public class Utility {
         return Math.sqrt(Math.pow(xCoord1-xCoord2,2)+Math.pow(yCoord1-yCoord2,2));
     }
 
+    //the distance on a field whose edges wrap around, the shorter way round in each direction
+    public static double torusDistanceBetween(double xCoord1, double yCoord1, double xCoord2, double yCoord2,
+                                              double xBounds, double yBounds){
+        double xDistance = Math.abs(xCoord1-xCoord2);
+        double yDistance = Math.abs(yCoord1-yCoord2);
+        xDistance = Math.min(xDistance, xBounds-xDistance);
+        yDistance = Math.min(yDistance, yBounds-yDistance);
+        return Math.sqrt(Math.pow(xDistance,2)+Math.pow(yDistance,2));
+    }
+
     public static double guessDistanceFromRSSI(Agent agent1, Agent agent2, int RSSI){
         return (-0.14 * RSSI) - 1.8722;
     }
+
+    //round used for random draws that happen while the scene is built, before round 0
+    public static final int SETUP_ROUND = -1;
+    //neighbor used for random draws that only belong to one agent
+    public static final int NO_NEIGHBOR = -1;
+
+    /**
+     * an independent random stream for one (round, agent, neighbor) triple.
+     * the same inputs always give the same stream, so draws don't depend on the order agents are visited in
+     */
+    public static RandomGenerator randomStream(long seed, long round, long agentUID, long neighborUID){
+        return new SplittableRandom(streamSeed(seed, round, agentUID, neighborUID));
+    }
+
+    //folds the triple into the seed with the SplitMix64 finalizer so nearby triples give unrelated seeds
+    static long streamSeed(long seed, long round, long agentUID, long neighborUID){
+        long mixed = mix64(seed);
+        mixed = mix64(mixed + 0x9E3779B97F4A7C15L + round);
+        mixed = mix64(mixed + 0x9E3779B97F4A7C15L + agentUID);
+        mixed = mix64(mixed + 0x9E3779B97F4A7C15L + neighborUID);
+        return mixed;
+    }
+
+    private static long mix64(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
 }